@@ -0,0 +1,112 @@
+package com.project.saasbilling.bench;
+
+import com.project.saasbilling.util.HmacSha256;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput of gateway signature verification with {@link HmacSha256}.
+ * Verifies checkout signatures (orderId|paymentId) on one thread and then on
+ * one thread per core, and reports verifications/sec per core and bytes
+ * allocated per verification.
+ * Run with {@code mvn -Pbench test-compile exec:java}; optional arguments are
+ * the threads, warmup seconds and measured seconds, e.g. {@code -Dexec.args="8 5 10"}.
+ */
+public class SignatureBenchmark {
+
+    private static final String SECRET = "bench_key_secret_0123456789";
+    private static final int MESSAGES = 1024;
+
+    private static volatile boolean sink;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int warmupSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int measureSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        HmacSha256 signer = new HmacSha256(SECRET);
+        String[] orderIds = new String[MESSAGES];
+        String[] paymentIds = new String[MESSAGES];
+        String[] signatures = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            orderIds[i] = "order_" + Long.toString(0x5A17C0DEL * (i + 1), 36);
+            paymentIds[i] = "pay_" + Long.toString(0x0BADF00DL * (i + 1), 36);
+            signatures[i] = signer.signHex(orderIds[i], paymentIds[i]);
+        }
+        Callable<Result> worker = () -> verifyFor(signer, orderIds, paymentIds, signatures,
+                warmupSeconds, measureSeconds);
+
+        System.out.printf("HMAC-SHA256 verification, %d warmup s, %d measured s, %d cores available%n",
+                warmupSeconds, measureSeconds, Runtime.getRuntime().availableProcessors());
+        report("1 thread", List.of(worker.call()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(worker));
+            }
+            List<Result> results = new ArrayList<>(threads);
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            report(threads + " threads", results);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Result verifyFor(HmacSha256 signer, String[] orderIds, String[] paymentIds, String[] signatures,
+                                    int warmupSeconds, int measureSeconds) {
+        run(signer, orderIds, paymentIds, signatures, warmupSeconds * 1_000_000_000L);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long operations = run(signer, orderIds, paymentIds, signatures, measureSeconds * 1_000_000_000L);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(operations, elapsed, allocated);
+    }
+
+    private static long run(HmacSha256 signer, String[] orderIds, String[] paymentIds, String[] signatures,
+                            long durationNanos) {
+        long deadline = System.nanoTime() + durationNanos;
+        long operations = 0;
+        boolean valid = true;
+        do {
+            // Check the clock once per pass so it does not dominate the loop
+            for (int i = 0; i < MESSAGES; i++) {
+                valid &= signer.verifyHex(signatures[i], orderIds[i], paymentIds[i]);
+            }
+            operations += MESSAGES;
+        } while (System.nanoTime() < deadline);
+        if (!valid) {
+            throw new IllegalStateException("Benchmark signature failed to verify");
+        }
+        sink = valid;
+        return operations;
+    }
+
+    private static void report(String label, List<Result> results) {
+        long operations = 0;
+        long allocated = 0;
+        double perSecond = 0;
+        for (Result result : results) {
+            operations += result.operations();
+            allocated += result.allocatedBytes();
+            perSecond += result.operations() * 1e9 / result.elapsedNanos();
+        }
+        System.out.printf("%-10s %,14.0f verifications/s  %,12.0f verifications/s per core  %6.1f B/op%n",
+                label, perSecond, perSecond / results.size(), (double) allocated / operations);
+    }
+
+    private record Result(long operations, long elapsedNanos, long allocatedBytes) {
+    }
+}
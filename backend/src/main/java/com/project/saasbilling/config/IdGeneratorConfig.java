@@ -0,0 +1,45 @@
+package com.project.saasbilling.config;
+
+import com.project.saasbilling.util.IdGenerator;
+import com.project.saasbilling.util.KSortableIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetAddress;
+
+/**
+ * Default id generator. Declaring another IdGenerator bean replaces it.
+ */
+@Configuration
+@Slf4j
+public class IdGeneratorConfig {
+
+    @Value("${ids.node-id:-1}")
+    private long nodeId;
+
+    @Bean
+    @ConditionalOnMissingBean(IdGenerator.class)
+    public IdGenerator idGenerator() {
+        long resolvedNodeId = nodeId >= 0 ? nodeId : deriveNodeId();
+        log.info("Id generator node id: {}", resolvedNodeId);
+        return new KSortableIdGenerator(resolvedNodeId);
+    }
+
+    /**
+     * Derive a node id from host name and process id when none is configured.
+     * Distinct nodes may collide, so multi-node deployments should set ids.node-id.
+     */
+    private long deriveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        long hash = (host + ":" + ProcessHandle.current().pid()).hashCode();
+        return hash & KSortableIdGenerator.MAX_NODE_ID;
+    }
+}
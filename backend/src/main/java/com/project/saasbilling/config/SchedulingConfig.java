@@ -0,0 +1,41 @@
+package com.project.saasbilling.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * Scheduler pool for @Scheduled jobs.
+ * Long jobs such as the billing run and the overdue sweep would otherwise
+ * hold Spring's single scheduler thread and stall the short periodic tasks
+ * (outbox relay, usage flush, quota reconcile, webhook sweep, plan catalog
+ * check, invoice PDF sweep). The pool is registered with the scheduler rather than exposed as a
+ * bean, so it does not replace the executor used for @Async work.
+ */
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer, DisposableBean {
+
+    @Value("${spring.task.scheduling.pool.size:8}")
+    private int poolSize;
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.initialize();
+        registrar.setTaskScheduler(scheduler);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+}
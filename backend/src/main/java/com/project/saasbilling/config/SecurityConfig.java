@@ -2,6 +2,7 @@ package com.project.saasbilling.config;
 
 import com.project.saasbilling.security.CustomUserDetailsService;
 import com.project.saasbilling.security.JwtAuthenticationFilter;
+import com.project.saasbilling.service.IdempotencyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -59,6 +60,9 @@ public class SecurityConfig {
                         .requestMatchers("/h2-console/**").permitAll()
                         .requestMatchers("/actuator/health", "/actuator/info").permitAll()
 
+                        // Gateway webhooks authenticate with their HMAC signature
+                        .requestMatchers(HttpMethod.POST, "/api/webhooks/**").permitAll()
+
                         // Public plan viewing
                         .requestMatchers(HttpMethod.GET, "/api/plans", "/api/plans/**").permitAll()
 
@@ -86,8 +90,9 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(List.of("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With"));
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With",
+                IdempotencyService.HEADER));
+        configuration.setExposedHeaders(List.of("Authorization", "Location", IdempotencyService.REPLAYED_HEADER));
         configuration.setMaxAge(3600L);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
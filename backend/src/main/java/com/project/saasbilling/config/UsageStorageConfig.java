@@ -0,0 +1,59 @@
+package com.project.saasbilling.config;
+
+import com.project.saasbilling.model.UsageRecord;
+import com.project.saasbilling.model.UsageStorageMode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+/**
+ * Storage settings for raw usage records.
+ * In time-series mode usage records live in a native MongoDB time-series
+ * collection keyed on recordedAt, with (userId, subscriptionId, metricName)
+ * as the metaField so measurements of one series share buckets.
+ */
+@Configuration
+@Getter
+public class UsageStorageConfig {
+
+    public static final String STANDARD_COLLECTION = "usage_records";
+    public static final String TIME_FIELD = "recordedAt";
+    public static final String META_FIELD = "meta";
+
+    @Value("${usage.storage.mode:STANDARD}")
+    private UsageStorageMode mode;
+
+    @Value("${usage.storage.time-series.collection:usage_records_ts}")
+    private String timeSeriesCollection;
+
+    @Value("${usage.storage.time-series.granularity:MINUTES}")
+    private Granularity granularity;
+
+    public boolean isTimeSeries() {
+        return mode == UsageStorageMode.TIME_SERIES;
+    }
+
+    /**
+     * Collection UsageRecord is mapped to, resolved from the storage mode.
+     */
+    public String getCollectionName() {
+        return isTimeSeries() ? timeSeriesCollection : STANDARD_COLLECTION;
+    }
+
+    /**
+     * Populate the metaField before usage records are written in time-series mode.
+     */
+    @Bean
+    public BeforeConvertCallback<UsageRecord> usageRecordMetaCallback() {
+        return (record, collection) -> {
+            if (isTimeSeries() && record.getMeta() == null) {
+                record.setMeta(new UsageRecord.Meta(record.getUserId(), record.getSubscriptionId(),
+                        record.getMetricName()));
+            }
+            return record;
+        };
+    }
+}
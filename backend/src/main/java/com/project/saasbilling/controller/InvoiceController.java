@@ -2,14 +2,17 @@ package com.project.saasbilling.controller;
 
 import com.project.saasbilling.dto.*;
 import com.project.saasbilling.model.Invoice;
+import com.project.saasbilling.model.InvoicePdfJob;
 import com.project.saasbilling.model.InvoiceStatus;
 import com.project.saasbilling.model.Plan;
 import com.project.saasbilling.model.Subscription;
 import com.project.saasbilling.model.User;
-import com.project.saasbilling.repository.PlanRepository;
 import com.project.saasbilling.repository.SubscriptionRepository;
 import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.service.InvoicePdfService;
 import com.project.saasbilling.service.InvoiceService;
+import com.project.saasbilling.service.MeteredBillingService;
+import com.project.saasbilling.service.PlanCatalog;
 import com.project.saasbilling.service.UserService;
 import com.project.saasbilling.util.DtoMapper;
 import com.project.saasbilling.exception.ResourceNotFoundException;
@@ -19,13 +22,18 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/invoices")
@@ -35,10 +43,12 @@ import java.util.List;
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final MeteredBillingService meteredBillingService;
+    private final InvoicePdfService invoicePdfService;
     private final UserService userService;
     private final SubscriptionRepository subscriptionRepository;
     private final UserRepository userRepository;
-    private final PlanRepository planRepository;
+    private final PlanCatalog planCatalog;
     private final DtoMapper dtoMapper;
 
     @GetMapping("/my")
@@ -65,6 +75,15 @@ public class InvoiceController {
         return ResponseEntity.ok(invoiceService.getAllInvoices(pageable));
     }
 
+    @GetMapping("/cursor")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Get all invoices with cursor pagination (Admin)")
+    public ResponseEntity<CursorPageResponse<InvoiceResponse>> getAllInvoicesByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(invoiceService.getAllInvoices(cursor, size));
+    }
+
     @PostMapping("/{id}/mark-paid")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Mark invoice as paid (Admin)")
@@ -89,10 +108,44 @@ public class InvoiceController {
         User user = userRepository.findById(subscription.getUserId())
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", subscription.getUserId()));
 
-        Plan plan = planRepository.findById(subscription.getPlanId())
+        Plan plan = planCatalog.findById(subscription.getPlanId())
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", subscription.getPlanId()));
 
         Invoice invoice = invoiceService.generateInvoice(subscription, user, plan);
         return ResponseEntity.ok(dtoMapper.toInvoiceResponse(invoice));
     }
+
+    @PostMapping("/metered/close")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Bill metered usage for closed billing periods (Admin)")
+    public ResponseEntity<Map<String, Integer>> closeMeteredPeriods() {
+        int invoices = meteredBillingService.closeEndedPeriods(LocalDateTime.now());
+        return ResponseEntity.ok(Map.of("invoicesCreated", invoices));
+    }
+
+    @PostMapping("/pdf/rerender")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Start re-rendering invoice PDFs, optionally for one month or only those missing (Admin)")
+    public ResponseEntity<InvoicePdfJobResponse> rerenderPdfs(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+            @RequestParam(defaultValue = "false") boolean missingOnly) {
+        InvoicePdfJob job = invoicePdfService.startRerender(month, missingOnly);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/invoices/pdf/rerender/" + job.getId()))
+                .body(dtoMapper.toInvoicePdfJobResponse(job));
+    }
+
+    @GetMapping("/pdf/rerender/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Get the status of an invoice PDF re-render job (Admin)")
+    public ResponseEntity<InvoicePdfJobResponse> getRerenderJob(@PathVariable String id) {
+        return ResponseEntity.ok(dtoMapper.toInvoicePdfJobResponse(invoicePdfService.getJob(id)));
+    }
+
+    @PostMapping("/overdue/process")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Mark past-due invoices overdue and send dunning notices (Admin)")
+    public ResponseEntity<Map<String, Long>> processOverdueInvoices() {
+        return ResponseEntity.ok(Map.of("invoicesMarkedOverdue", invoiceService.processOverdueInvoices()));
+    }
 }
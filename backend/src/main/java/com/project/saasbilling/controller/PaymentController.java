@@ -3,6 +3,7 @@ package com.project.saasbilling.controller;
 import com.project.saasbilling.dto.*;
 import com.project.saasbilling.model.PaymentStatus;
 import com.project.saasbilling.model.User;
+import com.project.saasbilling.service.IdempotencyService;
 import com.project.saasbilling.service.MockPaymentService;
 import com.project.saasbilling.service.PaymentService;
 import com.project.saasbilling.service.UserService;
@@ -20,6 +21,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -30,6 +32,7 @@ import java.util.List;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final IdempotencyService idempotencyService;
     private final MockPaymentService mockPaymentService;
     private final UserService userService;
 
@@ -65,10 +68,38 @@ public class PaymentController {
     public ResponseEntity<PaymentResponse> processPayment(
             @AuthenticationPrincipal UserDetails userDetails,
             @Valid @RequestBody PaymentRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             HttpServletRequest httpRequest) {
         User user = userService.getCurrentUser(userDetails.getUsername());
         String ip = httpRequest.getRemoteAddr();
-        return ResponseEntity.ok(paymentService.processPayment(user.getId(), request, ip));
+        return idempotencyService.execute("payment", user.getId(), idempotencyKey, request, PaymentResponse.class,
+                () -> ResponseEntity.ok(paymentService.processPayment(user.getId(), request, ip)));
+    }
+
+    @PostMapping("/async")
+    @Operation(summary = "Accept a payment and process it asynchronously; poll the Location URL for the outcome")
+    public ResponseEntity<PaymentResponse> processPaymentAsync(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody PaymentRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest httpRequest) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        String ip = httpRequest.getRemoteAddr();
+        return idempotencyService.execute("payment-async", user.getId(), idempotencyKey, request, PaymentResponse.class,
+                () -> {
+                    PaymentResponse payment = paymentService.acceptPayment(user.getId(), request, ip);
+                    return ResponseEntity.accepted()
+                            .location(URI.create("/api/payments/my/" + payment.getId()))
+                            .body(payment);
+                });
+    }
+
+    @GetMapping("/my/{id}")
+    @Operation(summary = "Get one of the current user's payments")
+    public ResponseEntity<PaymentResponse> getMyPayment(
+            @AuthenticationPrincipal UserDetails userDetails, @PathVariable String id) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        return ResponseEntity.ok(paymentService.getPaymentByIdAndUser(id, user.getId()));
     }
 
     @GetMapping("/my")
@@ -93,6 +124,15 @@ public class PaymentController {
         return ResponseEntity.ok(paymentService.getAllPayments(pageable));
     }
 
+    @GetMapping("/cursor")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Get all payments with cursor pagination (Admin)")
+    public ResponseEntity<CursorPageResponse<PaymentResponse>> getAllPaymentsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(paymentService.getAllPayments(cursor, size));
+    }
+
     @PostMapping("/{id}/refund")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Refund a payment (Admin)")
@@ -1,10 +1,14 @@
 package com.project.saasbilling.controller;
 
 import com.project.saasbilling.dto.*;
+import com.project.saasbilling.model.BillingRun;
 import com.project.saasbilling.model.SubscriptionStatus;
 import com.project.saasbilling.model.User;
+import com.project.saasbilling.service.BillingRunService;
+import com.project.saasbilling.service.IdempotencyService;
 import com.project.saasbilling.service.SubscriptionService;
 import com.project.saasbilling.service.UserService;
+import com.project.saasbilling.util.DtoMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -29,14 +33,20 @@ public class SubscriptionController {
 
     private final SubscriptionService subscriptionService;
     private final UserService userService;
+    private final BillingRunService billingRunService;
+    private final IdempotencyService idempotencyService;
+    private final DtoMapper dtoMapper;
 
     @PostMapping
     @Operation(summary = "Create a new subscription")
     public ResponseEntity<SubscriptionResponse> createSubscription(
             @AuthenticationPrincipal UserDetails userDetails,
-            @Valid @RequestBody SubscriptionRequest request) {
+            @Valid @RequestBody SubscriptionRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         User user = userService.getCurrentUser(userDetails.getUsername());
-        return ResponseEntity.ok(subscriptionService.createSubscription(user.getId(), request));
+        return idempotencyService.execute("subscription", user.getId(), idempotencyKey, request,
+                SubscriptionResponse.class,
+                () -> ResponseEntity.ok(subscriptionService.createSubscription(user.getId(), request)));
     }
 
     @GetMapping("/my")
@@ -91,4 +101,33 @@ public class SubscriptionController {
             @PageableDefault(size = 20) Pageable pageable) {
         return ResponseEntity.ok(subscriptionService.getAllSubscriptions(pageable));
     }
-}
\ No newline at end of file
+
+    @GetMapping("/cursor")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Get all subscriptions with cursor pagination (Admin)")
+    public ResponseEntity<CursorPageResponse<SubscriptionResponse>> getAllSubscriptionsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(subscriptionService.getAllSubscriptions(cursor, size));
+    }
+
+    @GetMapping("/billing-run")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Get current recurring billing run state (Admin)")
+    public ResponseEntity<BillingRunResponse> getBillingRun() {
+        BillingRun run = billingRunService.getCurrentRun();
+        return run != null
+                ? ResponseEntity.ok(dtoMapper.toBillingRunResponse(run))
+                : ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/billing-run")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Run or resume recurring billing now (Admin)")
+    public ResponseEntity<BillingRunResponse> runBilling() {
+        BillingRun run = billingRunService.runBilling();
+        return run != null
+                ? ResponseEntity.ok(dtoMapper.toBillingRunResponse(run))
+                : ResponseEntity.noContent().build();
+    }
+}
@@ -3,6 +3,7 @@ package com.project.saasbilling.controller;
 import com.project.saasbilling.dto.*;
 import com.project.saasbilling.model.User;
 import com.project.saasbilling.service.UsageService;
+import com.project.saasbilling.service.UsageStorageService;
 import com.project.saasbilling.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -11,12 +12,18 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -27,6 +34,7 @@ import java.util.Map;
 public class UsageController {
 
     private final UsageService usageService;
+    private final UsageStorageService usageStorageService;
     private final UserService userService;
 
     @PostMapping
@@ -38,6 +46,15 @@ public class UsageController {
         return ResponseEntity.ok(usageService.recordUsage(user.getId(), request));
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Record a batch of usage events")
+    public ResponseEntity<UsageBatchResponse> recordUsageBatch(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody UsageBatchRequest request) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        return ResponseEntity.ok(usageService.recordUsageBatch(user.getId(), request));
+    }
+
     @GetMapping("/my")
     @Operation(summary = "Get current user's usage")
     public ResponseEntity<PageResponse<UsageResponse>> getMyUsage(
@@ -47,6 +64,16 @@ public class UsageController {
         return ResponseEntity.ok(usageService.getUserUsage(user.getId(), pageable));
     }
 
+    @GetMapping("/my/cursor")
+    @Operation(summary = "Get current user's usage with cursor pagination")
+    public ResponseEntity<CursorPageResponse<UsageResponse>> getMyUsageByCursor(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        return ResponseEntity.ok(usageService.getUserUsage(user.getId(), cursor, size));
+    }
+
     @GetMapping("/my/summary")
     @Operation(summary = "Get current user's usage summary")
     public ResponseEntity<Map<String, Long>> getMyUsageSummary(
@@ -56,4 +83,49 @@ public class UsageController {
         LocalDateTime startDate = LocalDateTime.now().minusDays(days);
         return ResponseEntity.ok(usageService.getUserUsageSummary(user.getId(), startDate));
     }
+
+    @GetMapping("/my/daily")
+    @Operation(summary = "Get current user's per-day usage series")
+    public ResponseEntity<List<DailyUsageResponse>> getMyDailyUsage(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(required = false) String metric,
+            @RequestParam(defaultValue = "30") int days) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        LocalDateTime end = LocalDateTime.now();
+        return ResponseEntity.ok(usageService.getDailyUsage(user.getId(), metric, end.minusDays(days), end));
+    }
+
+    @GetMapping("/my/export")
+    @Operation(summary = "Stream current user's usage records as NDJSON or CSV")
+    public ResponseEntity<StreamingResponseBody> exportMyUsage(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(defaultValue = "NDJSON") UsageExportFormat format,
+            @RequestParam(required = false) String metric,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        User user = userService.getCurrentUser(userDetails.getUsername());
+        StreamingResponseBody body = out -> usageService.exportUsage(user.getId(), metric, from, to, format, out);
+
+        boolean csv = format == UsageExportFormat.CSV;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"usage." + (csv ? "csv" : "ndjson") + "\"")
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    @PostMapping("/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Rebuild usage rollups from raw records (Admin)")
+    public ResponseEntity<Void> rebuildRollups() {
+        usageService.rebuildRollups();
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/storage/migrate")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Copy usage records into the time-series collection (Admin)")
+    public ResponseEntity<Map<String, Long>> migrateUsageStorage() {
+        return ResponseEntity.ok(Map.of("copied", usageStorageService.migrateToTimeSeries()));
+    }
 }
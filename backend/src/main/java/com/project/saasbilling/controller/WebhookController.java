@@ -0,0 +1,29 @@
+package com.project.saasbilling.controller;
+
+import com.project.saasbilling.service.WebhookService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/webhooks")
+@RequiredArgsConstructor
+@Tag(name = "Webhooks", description = "Payment gateway webhooks")
+public class WebhookController {
+
+    private final WebhookService webhookService;
+
+    @PostMapping("/razorpay")
+    @Operation(summary = "Receive a Razorpay webhook event")
+    public ResponseEntity<Map<String, String>> receiveRazorpay(
+            @RequestBody String payload,
+            @RequestHeader(value = "X-Razorpay-Signature", required = false) String signature,
+            @RequestHeader(value = "X-Razorpay-Event-Id", required = false) String eventId) {
+        webhookService.receive(payload, signature, eventId);
+        return ResponseEntity.ok(Map.of("status", "received"));
+    }
+}
@@ -0,0 +1,31 @@
+package com.project.saasbilling.dto;
+
+import com.project.saasbilling.model.BillingRunStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for recurring billing run state.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingRunResponse {
+    private BillingRunStatus status;
+    private String owner;
+    private LocalDateTime cutoff;
+    private long processed;
+    private long renewed;
+    private long failed;
+    private long invoicesCreated;
+    private Double subscriptionsPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime heartbeatAt;
+    private LocalDateTime finishedAt;
+    private String lastError;
+}
@@ -0,0 +1,21 @@
+package com.project.saasbilling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * DTO for a single point of a per-day usage series.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyUsageResponse {
+    private LocalDate date;
+    private String metricName;
+    private Long totalValue;
+}
@@ -0,0 +1,28 @@
+package com.project.saasbilling.dto;
+
+import com.project.saasbilling.model.BillingRunStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for bulk invoice PDF re-render job state.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicePdfJobResponse {
+    private String id;
+    private BillingRunStatus status;
+    private String month;
+    private boolean missingOnly;
+    private long rendered;
+    private long failed;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String lastError;
+}
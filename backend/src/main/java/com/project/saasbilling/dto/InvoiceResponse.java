@@ -1,6 +1,7 @@
 package com.project.saasbilling.dto;
 
 import com.project.saasbilling.model.InvoiceStatus;
+import com.project.saasbilling.model.QuotaType;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,6 +10,7 @@ import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * DTO for invoice response.
@@ -38,5 +40,20 @@ public class InvoiceResponse {
     private LocalDate billingPeriodEnd;
     private String notes;
     private String pdfUrl;
+    private List<LineItem> lineItems;
     private LocalDateTime createdAt;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LineItem {
+        private String description;
+        private QuotaType quotaType;
+        private Long quantity;
+        private Long includedQuantity;
+        private Long billableQuantity;
+        private BigDecimal unitPrice;
+        private BigDecimal amount;
+    }
 }
@@ -48,6 +48,15 @@ public class PlanRequest {
     @Min(value = 1, message = "Users limit must be at least 1")
     private Integer usersLimit;
 
+    @DecimalMin(value = "0.0", inclusive = true, message = "Usage overage price must be non-negative")
+    private BigDecimal usageOveragePrice;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "API calls overage price must be non-negative")
+    private BigDecimal apiCallsOveragePrice;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "Storage overage price must be non-negative")
+    private BigDecimal storageOveragePrice;
+
     private Boolean isFeatured;
 
     @Min(value = 0, message = "Trial days must be non-negative")
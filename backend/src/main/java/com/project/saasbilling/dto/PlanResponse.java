@@ -28,6 +28,9 @@ public class PlanResponse {
     private Long apiCallsLimit;
     private Long storageLimitMb;
     private Integer usersLimit;
+    private BigDecimal usageOveragePrice;
+    private BigDecimal apiCallsOveragePrice;
+    private BigDecimal storageOveragePrice;
     private Boolean active;
     private Boolean isFeatured;
     private Integer trialDays;
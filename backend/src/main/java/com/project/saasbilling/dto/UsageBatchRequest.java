@@ -0,0 +1,22 @@
+package com.project.saasbilling.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for batch usage ingestion request.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageBatchRequest {
+
+    @NotEmpty(message = "At least one usage record is required")
+    private List<UsageRequest> records;
+}
@@ -0,0 +1,34 @@
+package com.project.saasbilling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for batch usage ingestion response with per-item results.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageBatchResponse {
+    private int received;
+    private int accepted;
+    private int rejected;
+    private List<ItemResult> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private int index;
+        private boolean success;
+        private String id;
+        private String error;
+        private Boolean duplicate;
+    }
+}
@@ -0,0 +1,9 @@
+package com.project.saasbilling.dto;
+
+/**
+ * Supported formats for streaming usage export.
+ */
+public enum UsageExportFormat {
+    NDJSON,
+    CSV
+}
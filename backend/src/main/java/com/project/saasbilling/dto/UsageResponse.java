@@ -24,5 +24,7 @@ public class UsageResponse {
     private Long usageValue;
     private String unit;
     private String description;
+    private String idempotencyKey;
     private LocalDateTime recordedAt;
+    private Boolean overQuota;
 }
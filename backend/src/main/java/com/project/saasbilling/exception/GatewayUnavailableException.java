@@ -0,0 +1,15 @@
+package com.project.saasbilling.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when the payment gateway is failing fast: its circuit is
+ * open, its concurrency limit is reached or a call timed out. After a
+ * timeout the call's outcome at the gateway is unknown.
+ */
+public class GatewayUnavailableException extends ApiException {
+
+    public GatewayUnavailableException(String message) {
+        super(message, HttpStatus.SERVICE_UNAVAILABLE, "GATEWAY_UNAVAILABLE");
+    }
+}
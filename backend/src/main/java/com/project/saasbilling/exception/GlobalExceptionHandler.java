@@ -2,6 +2,7 @@ package com.project.saasbilling.exception;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -151,6 +152,24 @@ public class GlobalExceptionHandler {
                 return new ResponseEntity<>(error, HttpStatus.PAYLOAD_TOO_LARGE);
         }
 
+        @ExceptionHandler(OptimisticLockingFailureException.class)
+        public ResponseEntity<ErrorResponse> handleOptimisticLockingFailureException(
+                        OptimisticLockingFailureException ex, HttpServletRequest request) {
+
+                log.warn("Concurrent modification on {}: {}", request.getRequestURI(), ex.getMessage());
+
+                ErrorResponse error = ErrorResponse.builder()
+                                .timestamp(LocalDateTime.now())
+                                .status(HttpStatus.CONFLICT.value())
+                                .error("Conflict")
+                                .code("CONCURRENT_MODIFICATION")
+                                .message("The resource was modified concurrently, please retry")
+                                .path(request.getRequestURI())
+                                .build();
+
+                return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+        }
+
         @ExceptionHandler(Exception.class)
         public ResponseEntity<ErrorResponse> handleGenericException(
                         Exception ex, HttpServletRequest request) {
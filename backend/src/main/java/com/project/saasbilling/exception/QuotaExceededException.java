@@ -0,0 +1,13 @@
+package com.project.saasbilling.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when usage exceeds the subscription's plan quota.
+ */
+public class QuotaExceededException extends ApiException {
+
+    public QuotaExceededException(String message) {
+        super(message, HttpStatus.TOO_MANY_REQUESTS, "QUOTA_EXCEEDED");
+    }
+}
@@ -0,0 +1,13 @@
+package com.project.saasbilling.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when a webhook signature does not match its payload.
+ */
+public class WebhookSignatureException extends ApiException {
+
+    public WebhookSignatureException(String message) {
+        super(message, HttpStatus.UNAUTHORIZED, "INVALID_SIGNATURE");
+    }
+}
@@ -1,10 +1,23 @@
 package com.project.saasbilling.model;
 
+import java.time.LocalDateTime;
+
 /**
  * Enumeration representing billing cycle options for plans.
  */
 public enum BillingCycle {
     MONTHLY,
     QUARTERLY,
-    YEARLY
+    YEARLY;
+
+    /**
+     * End of a billing period of this cycle starting at the given time.
+     */
+    public LocalDateTime periodEnd(LocalDateTime periodStart) {
+        return switch (this) {
+            case MONTHLY -> periodStart.plusMonths(1);
+            case QUARTERLY -> periodStart.plusMonths(3);
+            case YEARLY -> periodStart.plusYears(1);
+        };
+    }
 }
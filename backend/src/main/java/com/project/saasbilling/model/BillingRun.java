@@ -0,0 +1,58 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Recurring billing run state.
+ * One document per billing job holding the current or last run, its
+ * keyset checkpoint and counters, so a crashed run can be resumed.
+ */
+@Document(collection = "billing_runs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BillingRun {
+
+    @Id
+    private String id;
+
+    private BillingRunStatus status;
+
+    // Node currently owning the run
+    private String owner;
+
+    // Subscriptions due at or before this time are billed by the run
+    private LocalDateTime cutoff;
+
+    // Keyset position (nextBillingDate, _id) of the last completed wave
+    private LocalDateTime checkpointDate;
+    private String checkpointId;
+
+    @Builder.Default
+    private long processed = 0L;
+
+    @Builder.Default
+    private long renewed = 0L;
+
+    @Builder.Default
+    private long failed = 0L;
+
+    @Builder.Default
+    private long invoicesCreated = 0L;
+
+    private Double subscriptionsPerSecond;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime heartbeatAt;
+
+    private LocalDateTime finishedAt;
+
+    private String lastError;
+}
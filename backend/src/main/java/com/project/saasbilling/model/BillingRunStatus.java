@@ -0,0 +1,10 @@
+package com.project.saasbilling.model;
+
+/**
+ * Enumeration representing recurring billing run states.
+ */
+public enum BillingRunStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
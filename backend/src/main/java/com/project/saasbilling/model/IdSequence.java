@@ -0,0 +1,23 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Named counter from which sequence blocks are reserved.
+ * The value is the highest number handed out to any node so far.
+ */
+@Document(collection = "id_sequences")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdSequence {
+
+    @Id
+    private String id;
+
+    private long value;
+}
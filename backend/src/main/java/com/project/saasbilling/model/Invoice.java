@@ -3,17 +3,20 @@ package com.project.saasbilling.model;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Invoice document representing a billing invoice.
  */
 @Document(collection = "invoices")
+@CompoundIndex(name = "created_id_idx", def = "{'createdAt': -1, '_id': -1}")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -60,6 +63,12 @@ public class Invoice {
 
     private LocalDate paidDate;
 
+    // Set when the overdue job flips the invoice
+    private LocalDateTime overdueAt;
+
+    // Set once the invoice has been handed to dunning, so an interrupted run resumes where it stopped
+    private LocalDateTime dunningSentAt;
+
     private LocalDate billingPeriodStart;
 
     private LocalDate billingPeriodEnd;
@@ -68,6 +77,15 @@ public class Invoice {
 
     private String pdfUrl;
 
+    // Set when the missing-PDF sweep queues the invoice, so sweeps on other nodes skip it
+    private LocalDateTime pdfSweptAt;
+
+    private List<InvoiceLineItem> lineItems;
+
+    // Identifies the billing event that produced the invoice, so re-running it cannot bill twice
+    @Indexed(unique = true, sparse = true)
+    private String billingKey;
+
     @CreatedDate
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,30 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Line item embedded in an invoice, e.g. metered overage for one quota.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceLineItem {
+
+    private String description;
+
+    private QuotaType quotaType;
+
+    private Long quantity;
+
+    private Long includedQuantity;
+
+    private Long billableQuantity;
+
+    private BigDecimal unitPrice;
+
+    private BigDecimal amount;
+}
@@ -0,0 +1,11 @@
+package com.project.saasbilling.model;
+
+/**
+ * How invoice numbers are allocated.
+ */
+public enum InvoiceNumberMode {
+    // Time-ordered id from the node-local id generator
+    RANDOM,
+    // Per-month counter reserved from MongoDB in hi/lo blocks
+    SEQUENCE
+}
@@ -0,0 +1,46 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bulk invoice PDF re-render job.
+ * Started by an admin request and run in the background; the document
+ * holds its parameters and counters so its status can be polled from any node.
+ */
+@Document(collection = "invoice_pdf_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoicePdfJob {
+
+    @Id
+    private String id;
+
+    private BillingRunStatus status;
+
+    // Month re-rendered as yyyy-MM, or null for all invoices
+    private String month;
+
+    private boolean missingOnly;
+
+    @Builder.Default
+    private long rendered = 0L;
+
+    @Builder.Default
+    private long failed = 0L;
+
+    private LocalDateTime startedAt;
+
+    // Finished jobs are kept for a week for inspection
+    @Indexed(name = "finished_ttl_idx", expireAfter = "7d")
+    private LocalDateTime finishedAt;
+
+    private String lastError;
+}
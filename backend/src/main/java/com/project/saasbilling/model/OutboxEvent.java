@@ -0,0 +1,57 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Side effect of a billing operation waiting to be delivered by the outbox relay.
+ * Written before the document it belongs to, so a crash after that write
+ * cannot lose the side effect; events whose document never appears are
+ * discarded by the relay.
+ */
+@Document(collection = "outbox")
+@CompoundIndexes({
+        @CompoundIndex(name = "status_created_idx", def = "{'status': 1, 'createdAt': 1}"),
+        @CompoundIndex(name = "claim_idx", def = "{'claimToken': 1}", sparse = true)
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+
+    @Id
+    private String id;
+
+    private OutboxEventType type;
+
+    // Id of the subscription or payment the side effect belongs to
+    private String aggregateId;
+
+    @Builder.Default
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Builder.Default
+    private int attempts = 0;
+
+    private String lastError;
+
+    private String claimToken;
+
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime availableAt;
+
+    // Finished events are kept for a week for inspection
+    @Indexed(name = "processed_ttl_idx", expireAfter = "7d")
+    private LocalDateTime processedAt;
+}
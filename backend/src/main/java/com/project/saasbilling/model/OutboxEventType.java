@@ -0,0 +1,10 @@
+package com.project.saasbilling.model;
+
+/**
+ * Enumeration representing side effects delivered through the outbox.
+ */
+public enum OutboxEventType {
+    SUBSCRIPTION_INVOICE,
+    SUBSCRIPTION_CREATED_EMAIL,
+    PAYMENT_CONFIRMATION_EMAIL
+}
@@ -0,0 +1,12 @@
+package com.project.saasbilling.model;
+
+/**
+ * Enumeration representing outbox event delivery states.
+ */
+public enum OutboxStatus {
+    PENDING,
+    PROCESSING,
+    DELIVERED,
+    DISCARDED,
+    FAILED
+}
@@ -3,6 +3,8 @@ package com.project.saasbilling.model;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -13,6 +15,10 @@ import java.time.LocalDateTime;
  * Payment log document representing a payment transaction.
  */
 @Document(collection = "payment_logs")
+@CompoundIndexes({
+        @CompoundIndex(name = "created_id_idx", def = "{'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "status_created_idx", def = "{'status': 1, 'createdAt': 1}")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -46,6 +46,13 @@ public class Plan {
 
     private Integer usersLimit;
 
+    // Per-unit prices for usage beyond the matching limit; null means overage is not billed
+    private BigDecimal usageOveragePrice;
+
+    private BigDecimal apiCallsOveragePrice;
+
+    private BigDecimal storageOveragePrice;
+
     @Builder.Default
     private Boolean active = true;
 
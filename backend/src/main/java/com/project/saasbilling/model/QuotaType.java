@@ -0,0 +1,34 @@
+package com.project.saasbilling.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Enumeration representing the plan limits usage metrics are counted against.
+ */
+public enum QuotaType {
+    USAGE,
+    API_CALLS,
+    STORAGE;
+
+    /**
+     * Get this quota's limit from a plan, or null if unlimited.
+     */
+    public Long limitOf(Plan plan) {
+        return switch (this) {
+            case USAGE -> plan.getUsageLimit();
+            case API_CALLS -> plan.getApiCallsLimit();
+            case STORAGE -> plan.getStorageLimitMb();
+        };
+    }
+
+    /**
+     * Get the per-unit price of usage beyond this quota's limit, or null if overage is not billed.
+     */
+    public BigDecimal overagePriceOf(Plan plan) {
+        return switch (this) {
+            case USAGE -> plan.getUsageOveragePrice();
+            case API_CALLS -> plan.getApiCallsOveragePrice();
+            case STORAGE -> plan.getStorageOveragePrice();
+        };
+    }
+}
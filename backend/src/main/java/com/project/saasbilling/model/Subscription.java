@@ -4,6 +4,9 @@ import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DBRef;
@@ -14,6 +17,11 @@ import java.time.LocalDateTime;
  * Subscription document representing a user's subscription to a plan.
  */
 @Document(collection = "subscriptions")
+@CompoundIndexes({
+        @CompoundIndex(name = "billing_due_idx", def = "{'status': 1, 'nextBillingDate': 1, '_id': 1}"),
+        @CompoundIndex(name = "created_id_idx", def = "{'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "user_status_idx", def = "{'userId': 1, 'status': 1}")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,7 +32,6 @@ public class Subscription {
     @Id
     private String id;
 
-    @Indexed
     private String userId;
 
     @Indexed
@@ -55,9 +62,22 @@ public class Subscription {
 
     private String externalSubscriptionId;
 
+    // End of the last period whose metered usage has been invoiced
+    private LocalDateTime meteredBilledThrough;
+
+    // Period replaced by a renewal whose metered usage is not invoiced yet
+    private LocalDateTime meteredPendingStart;
+
+    @Indexed(sparse = true)
+    private LocalDateTime meteredPendingEnd;
+
     @CreatedDate
     private LocalDateTime createdAt;
 
     @LastModifiedDate
     private LocalDateTime updatedAt;
+
+    // Incremented by every write, so a save of a stale copy fails instead of overwriting newer state
+    @Version
+    private Long version;
 }
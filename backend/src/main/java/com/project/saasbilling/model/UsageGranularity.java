@@ -0,0 +1,9 @@
+package com.project.saasbilling.model;
+
+/**
+ * Enumeration representing usage rollup bucket sizes.
+ */
+public enum UsageGranularity {
+    HOURLY,
+    DAILY
+}
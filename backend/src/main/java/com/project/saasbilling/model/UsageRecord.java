@@ -2,15 +2,22 @@ package com.project.saasbilling.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 /**
  * Usage record document representing resource consumption.
+ * Stored in a regular or time-series collection depending on {@code usage.storage.mode}.
  */
-@Document(collection = "usage_records")
+@Document(collection = "#{@usageStorageConfig.collectionName}")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_metric_recorded_idx", def = "{'userId': 1, 'metricName': 1, 'recordedAt': 1}"),
+        @CompoundIndex(name = "subscription_recorded_idx", def = "{'subscriptionId': 1, 'recordedAt': 1}"),
+        @CompoundIndex(name = "user_recorded_id_idx", def = "{'userId': 1, 'recordedAt': -1, '_id': -1}")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,17 +28,14 @@ public class UsageRecord {
     @Id
     private String id;
 
-    @Indexed
     private String userId;
 
-    @Indexed
     private String subscriptionId;
 
     // Denormalized for easy access
     private String userEmail;
     private String planName;
 
-    @Indexed
     private String metricName;
 
     private Long usageValue;
@@ -40,6 +44,24 @@ public class UsageRecord {
 
     private String description;
 
-    @Indexed
+    // Client-supplied key used to drop retried events; unique per user when present
+    private String idempotencyKey;
+
     private LocalDateTime recordedAt;
+
+    // Set when the event was accepted past the plan quota
+    private Boolean overQuota;
+
+    // Time-series metaField, only populated in time-series storage mode
+    private Meta meta;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Meta {
+        private String userId;
+        private String subscriptionId;
+        private String metricName;
+    }
 }
@@ -0,0 +1,51 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Usage rollup document holding pre-aggregated usage for a time bucket.
+ * Maintained with upserted $inc updates, one document per
+ * (user, subscription, metric, granularity, bucket).
+ */
+@Document(collection = "usage_rollups")
+@CompoundIndexes({
+        @CompoundIndex(name = "rollup_bucket_idx",
+                def = "{'userId': 1, 'subscriptionId': 1, 'metricName': 1, 'granularity': 1, 'bucketStart': 1}",
+                unique = true),
+        @CompoundIndex(name = "subscription_bucket_idx",
+                def = "{'subscriptionId': 1, 'granularity': 1, 'bucketStart': 1}")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UsageRollup {
+
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String subscriptionId;
+
+    private String metricName;
+
+    private UsageGranularity granularity;
+
+    private LocalDateTime bucketStart;
+
+    @Builder.Default
+    private Long totalValue = 0L;
+
+    @Builder.Default
+    private Long eventCount = 0L;
+
+    private LocalDateTime lastUpdatedAt;
+}
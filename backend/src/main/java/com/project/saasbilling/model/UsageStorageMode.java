@@ -0,0 +1,9 @@
+package com.project.saasbilling.model;
+
+/**
+ * Storage layout for raw usage records.
+ */
+public enum UsageStorageMode {
+    STANDARD,
+    TIME_SERIES
+}
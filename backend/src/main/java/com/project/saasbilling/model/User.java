@@ -4,6 +4,7 @@ import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DBRef;
@@ -17,6 +18,7 @@ import java.util.List;
  * Contains authentication and profile information.
  */
 @Document(collection = "users")
+@CompoundIndex(name = "created_id_idx", def = "{'createdAt': -1, '_id': -1}")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,53 @@
+package com.project.saasbilling.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Gateway webhook event persisted to the inbox before it is acknowledged.
+ * The gateway event id is the document id, so redelivered events are
+ * rejected by the primary key.
+ */
+@Document(collection = "webhook_inbox")
+@CompoundIndexes({
+        @CompoundIndex(name = "order_status_received_idx", def = "{'orderId': 1, 'status': 1, 'receivedAt': 1}"),
+        @CompoundIndex(name = "status_received_idx", def = "{'status': 1, 'receivedAt': 1}")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookEvent {
+
+    @Id
+    private String id;
+
+    private String eventType;
+
+    private String orderId;
+
+    private String paymentId;
+
+    // Raw body as received, kept for replay and audit
+    private String payload;
+
+    @Builder.Default
+    private WebhookEventStatus status = WebhookEventStatus.RECEIVED;
+
+    @Builder.Default
+    private int attempts = 0;
+
+    private String lastError;
+
+    private LocalDateTime receivedAt;
+
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime processedAt;
+}
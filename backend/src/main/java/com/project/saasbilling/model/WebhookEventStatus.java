@@ -0,0 +1,12 @@
+package com.project.saasbilling.model;
+
+/**
+ * Enumeration representing gateway webhook inbox states.
+ */
+public enum WebhookEventStatus {
+    RECEIVED,
+    PROCESSING,
+    PROCESSED,
+    IGNORED,
+    FAILED
+}
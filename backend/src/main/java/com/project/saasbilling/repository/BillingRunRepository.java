@@ -0,0 +1,12 @@
+package com.project.saasbilling.repository;
+
+import com.project.saasbilling.model.BillingRun;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * MongoDB repository for BillingRun documents.
+ */
+@Repository
+public interface BillingRunRepository extends MongoRepository<BillingRun, String> {
+}
@@ -0,0 +1,12 @@
+package com.project.saasbilling.repository;
+
+import com.project.saasbilling.model.InvoicePdfJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * MongoDB repository for InvoicePdfJob documents.
+ */
+@Repository
+public interface InvoicePdfJobRepository extends MongoRepository<InvoicePdfJob, String> {
+}
@@ -29,6 +29,8 @@ public interface PaymentLogRepository extends MongoRepository<PaymentLog, String
 
         List<PaymentLog> findByStatus(PaymentStatus status);
 
+        boolean existsByInvoiceIdAndStatus(String invoiceId, PaymentStatus status);
+
         List<PaymentLog> findByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
 
         long countByStatus(PaymentStatus status);
@@ -8,6 +8,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +24,8 @@ public interface SubscriptionRepository extends MongoRepository<Subscription, St
 
         Optional<Subscription> findByUserIdAndStatus(String userId, SubscriptionStatus status);
 
+        Optional<Subscription> findFirstByUserIdAndStatusIn(String userId, Collection<SubscriptionStatus> statuses);
+
         List<Subscription> findByStatus(SubscriptionStatus status);
 
         List<Subscription> findByStatusAndNextBillingDateBefore(SubscriptionStatus status, LocalDateTime date);
@@ -7,13 +7,15 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * MongoDB repository for UsageRecord documents.
  */
 @Repository
-public interface UsageRecordRepository extends MongoRepository<UsageRecord, String> {
+public interface UsageRecordRepository extends MongoRepository<UsageRecord, String>, UsageRecordRepositoryCustom {
 
         List<UsageRecord> findByUserId(String userId);
 
@@ -27,4 +29,8 @@ public interface UsageRecordRepository extends MongoRepository<UsageRecord, Stri
 
         List<UsageRecord> findBySubscriptionIdAndRecordedAtBetween(String subscriptionId, LocalDateTime start,
                         LocalDateTime end);
+
+        Optional<UsageRecord> findFirstByUserIdAndIdempotencyKey(String userId, String idempotencyKey);
+
+        List<UsageRecord> findByUserIdAndIdempotencyKeyIn(String userId, Collection<String> idempotencyKeys);
 }
@@ -0,0 +1,20 @@
+package com.project.saasbilling.repository;
+
+import com.project.saasbilling.dto.DailyUsageResponse;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom UsageRecord queries backed by server-side aggregation pipelines.
+ * Ranges are half-open: [start, end).
+ */
+public interface UsageRecordRepositoryCustom {
+
+        long sumUsage(String userId, String metricName, LocalDateTime start, LocalDateTime end);
+
+        Map<String, Long> sumUsageByMetric(String userId, LocalDateTime start, LocalDateTime end);
+
+        List<DailyUsageResponse> dailyUsage(String userId, String metricName, LocalDateTime start, LocalDateTime end);
+}
@@ -0,0 +1,92 @@
+package com.project.saasbilling.repository;
+
+import com.project.saasbilling.dto.DailyUsageResponse;
+import com.project.saasbilling.model.UsageRecord;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation pipeline implementation of {@link UsageRecordRepositoryCustom}.
+ * Each query matches on the (userId, metricName, recordedAt) index and only
+ * grouped totals are returned to the application.
+ */
+@RequiredArgsConstructor
+public class UsageRecordRepositoryImpl implements UsageRecordRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public long sumUsage(String userId, String metricName, LocalDateTime start, LocalDateTime end) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(rangeCriteria(userId, metricName, start, end)),
+                Aggregation.group().sum("usageValue").as("total"));
+
+        Document result = mongoTemplate.aggregate(aggregation, UsageRecord.class, Document.class)
+                .getUniqueMappedResult();
+        return result != null ? toLong(result.get("total")) : 0L;
+    }
+
+    @Override
+    public Map<String, Long> sumUsageByMetric(String userId, LocalDateTime start, LocalDateTime end) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(rangeCriteria(userId, null, start, end)),
+                Aggregation.group("metricName").sum("usageValue").as("total"));
+
+        Map<String, Long> totals = new HashMap<>();
+        for (Document doc : mongoTemplate.aggregate(aggregation, UsageRecord.class, Document.class)) {
+            totals.put(doc.getString("_id"), toLong(doc.get("total")));
+        }
+        return totals;
+    }
+
+    @Override
+    public List<DailyUsageResponse> dailyUsage(String userId, String metricName, LocalDateTime start,
+            LocalDateTime end) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(rangeCriteria(userId, metricName, start, end)),
+                Aggregation.project("metricName", "usageValue")
+                        .and(DateOperators.dateOf("recordedAt")
+                                .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()))
+                                .toString("%Y-%m-%d"))
+                        .as("day"),
+                Aggregation.group("day", "metricName").sum("usageValue").as("total"),
+                Aggregation.sort(Sort.by("_id.day", "_id.metricName")));
+
+        return mongoTemplate.aggregate(aggregation, UsageRecord.class, Document.class)
+                .getMappedResults()
+                .stream()
+                .map(doc -> {
+                    Document id = doc.get("_id", Document.class);
+                    return DailyUsageResponse.builder()
+                            .date(LocalDate.parse(id.getString("day")))
+                            .metricName(id.getString("metricName"))
+                            .totalValue(toLong(doc.get("total")))
+                            .build();
+                })
+                .toList();
+    }
+
+    private Criteria rangeCriteria(String userId, String metricName, LocalDateTime start, LocalDateTime end) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (metricName != null) {
+            criteria.and("metricName").is(metricName);
+        }
+        return criteria.and("recordedAt").gte(start).lt(end);
+    }
+
+    private long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
@@ -0,0 +1,26 @@
+package com.project.saasbilling.repository;
+
+import com.project.saasbilling.model.UsageGranularity;
+import com.project.saasbilling.model.UsageRollup;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * MongoDB repository for UsageRollup documents.
+ */
+@Repository
+public interface UsageRollupRepository extends MongoRepository<UsageRollup, String> {
+
+        List<UsageRollup> findByUserIdAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThan(
+                        String userId, UsageGranularity granularity, LocalDateTime start, LocalDateTime end);
+
+        List<UsageRollup> findByUserIdAndMetricNameAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThan(
+                        String userId, String metricName, UsageGranularity granularity, LocalDateTime start,
+                        LocalDateTime end);
+
+        List<UsageRollup> findBySubscriptionIdAndGranularityAndBucketStartGreaterThanEqual(
+                        String subscriptionId, UsageGranularity granularity, LocalDateTime start);
+}
@@ -0,0 +1,78 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.dto.SubscriptionResponse;
+import com.project.saasbilling.model.SubscriptionStatus;
+import com.project.saasbilling.repository.SubscriptionRepository;
+import com.project.saasbilling.util.BoundedTtlCache;
+import com.project.saasbilling.util.DtoMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * In-process cache of each user's active (ACTIVE or TRIAL) subscription
+ * view, including users without one, so the frequently polled active
+ * subscription endpoint is served from memory. Misses load through the
+ * (userId, status) index. Entries are invalidated by every path that
+ * mutates subscriptions, dropped whenever the plan catalog reloads, and
+ * otherwise expire after a short TTL, which bounds staleness for
+ * subscription changes made on other nodes.
+ */
+@Service
+public class ActiveSubscriptionCache {
+
+    private static final List<SubscriptionStatus> LIVE_STATUSES =
+            List.of(SubscriptionStatus.ACTIVE, SubscriptionStatus.TRIAL);
+
+    /**
+     * Cached view; a null subscription records that the user has none.
+     */
+    private record ActiveView(SubscriptionResponse subscription) {
+    }
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final DtoMapper dtoMapper;
+    private final BoundedTtlCache<String, ActiveView> views;
+
+    public ActiveSubscriptionCache(SubscriptionRepository subscriptionRepository, DtoMapper dtoMapper,
+            PlanCatalog planCatalog, MeterRegistry meterRegistry,
+            @Value("${subscription.active-cache.max-size:10000}") int maxSize,
+            @Value("${subscription.active-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.dtoMapper = dtoMapper;
+        this.views = new BoundedTtlCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+        // Views embed their plan, so any plan change on any node drops them
+        planCatalog.onReload(this::invalidateAll);
+        FunctionCounter.builder("subscription.active.cache.gets", views, BoundedTtlCache::hitCount)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("subscription.active.cache.gets", views, BoundedTtlCache::missCount)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("subscription.active.cache.size", views, BoundedTtlCache::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the user's active subscription, or null if the user has none.
+     */
+    public SubscriptionResponse get(String userId) {
+        return views.get(userId, id -> new ActiveView(subscriptionRepository
+                .findFirstByUserIdAndStatusIn(id, LIVE_STATUSES)
+                .map(dtoMapper::toSubscriptionResponse)
+                .orElse(null))).subscription();
+    }
+
+    public void invalidate(String userId) {
+        views.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        views.invalidateAll();
+    }
+}
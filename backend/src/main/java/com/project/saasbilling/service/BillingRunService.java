@@ -0,0 +1,431 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.*;
+import com.project.saasbilling.repository.BillingRunRepository;
+import com.project.saasbilling.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Recurring billing engine.
+ * Finds subscriptions due for renewal with keyset iteration over
+ * (nextBillingDate, _id), splits them into partitions and renews each
+ * partition on a bounded worker pool: metered usage of the closing period is
+ * billed, renewal invoices are bulk-inserted and billing dates are advanced
+ * with a bulk write. Progress is checkpointed after every wave of partitions,
+ * so a run interrupted by a crash resumes where it stopped.
+ */
+@Service
+@Slf4j
+public class BillingRunService {
+
+    private static final String RECURRING_RUN_ID = "recurring";
+
+    private final BillingRunRepository billingRunRepository;
+    private final PlanCatalog planCatalog;
+    private final UserRepository userRepository;
+    private final InvoiceService invoiceService;
+    private final MeteredBillingService meteredBillingService;
+    private final EmailService emailService;
+    private final QuotaService quotaService;
+    private final UsageLookupCache usageLookupCache;
+    private final ActiveSubscriptionCache activeSubscriptionCache;
+    private final MongoTemplate mongoTemplate;
+    private final Counter renewedCounter;
+    private final AtomicReference<Double> lastThroughput = new AtomicReference<>(0.0);
+    private final String owner;
+
+    @Value("${billing.run.partition-size:200}")
+    private int partitionSize;
+
+    @Value("${billing.run.parallelism:4}")
+    private int parallelism;
+
+    @Value("${billing.run.stale-after-minutes:15}")
+    private long staleAfterMinutes;
+
+    private ExecutorService executor;
+
+    public BillingRunService(BillingRunRepository billingRunRepository, PlanCatalog planCatalog,
+            UserRepository userRepository, InvoiceService invoiceService,
+            MeteredBillingService meteredBillingService, EmailService emailService, QuotaService quotaService,
+            UsageLookupCache usageLookupCache, ActiveSubscriptionCache activeSubscriptionCache,
+            MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.billingRunRepository = billingRunRepository;
+        this.planCatalog = planCatalog;
+        this.userRepository = userRepository;
+        this.invoiceService = invoiceService;
+        this.meteredBillingService = meteredBillingService;
+        this.emailService = emailService;
+        this.quotaService = quotaService;
+        this.usageLookupCache = usageLookupCache;
+        this.activeSubscriptionCache = activeSubscriptionCache;
+        this.mongoTemplate = mongoTemplate;
+        this.renewedCounter = Counter.builder("billing.run.renewed")
+                .description("Subscriptions renewed by recurring billing runs")
+                .register(meterRegistry);
+        Gauge.builder("billing.run.throughput", lastThroughput, AtomicReference::get)
+                .description("Subscriptions per second processed by the last billing run")
+                .baseUnit("subscriptions/s")
+                .register(meterRegistry);
+        this.owner = resolveOwner();
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "billing-run-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Run recurring billing on a schedule.
+     */
+    @Scheduled(cron = "${billing.run.cron:0 0 * * * *}")
+    public void scheduledRun() {
+        runBilling();
+    }
+
+    /**
+     * Claim and execute a billing run, resuming an interrupted one if present.
+     * Returns the run state, or the state of a run owned by another node.
+     */
+    public BillingRun runBilling() {
+        BillingRun run = claimRun();
+        if (run == null) {
+            return getCurrentRun();
+        }
+
+        log.info("Billing run {} (cutoff {}) from checkpoint ({}, {})", run.getStartedAt(), run.getCutoff(),
+                run.getCheckpointDate(), run.getCheckpointId());
+        long startNanos = System.nanoTime();
+        long processedAtStart = run.getProcessed();
+
+        try {
+            expireNonRenewing(run.getCutoff());
+
+            List<Subscription> page;
+            while (!(page = nextWave(run)).isEmpty()) {
+                WaveResult result = processWave(page);
+
+                Subscription last = page.get(page.size() - 1);
+                run.setCheckpointDate(last.getNextBillingDate());
+                run.setCheckpointId(last.getId());
+                run.setProcessed(run.getProcessed() + page.size());
+                run.setRenewed(run.getRenewed() + result.renewed());
+                run.setFailed(run.getFailed() + result.failed());
+                run.setInvoicesCreated(run.getInvoicesCreated() + result.invoices());
+                run.setSubscriptionsPerSecond(throughput(run.getProcessed() - processedAtStart, startNanos));
+                checkpoint(run);
+            }
+
+            // Periods of subscriptions that ended without renewal still get their usage billed
+            int usageInvoices = meteredBillingService.closeEndedPeriods(run.getCutoff());
+            run.setInvoicesCreated(run.getInvoicesCreated() + usageInvoices);
+            run.setStatus(BillingRunStatus.COMPLETED);
+        } catch (Exception e) {
+            log.error("Billing run failed, will resume from checkpoint: {}", e.getMessage(), e);
+            run.setStatus(BillingRunStatus.FAILED);
+            run.setLastError(e.getMessage());
+        }
+
+        double subscriptionsPerSecond = throughput(run.getProcessed() - processedAtStart, startNanos);
+        run.setSubscriptionsPerSecond(subscriptionsPerSecond);
+        run.setFinishedAt(LocalDateTime.now());
+        checkpoint(run);
+        lastThroughput.set(subscriptionsPerSecond);
+
+        log.info("Billing run {}: {} processed, {} renewed, {} failed, {} invoices, {} subscriptions/s",
+                run.getStatus(), run.getProcessed(), run.getRenewed(), run.getFailed(), run.getInvoicesCreated(),
+                String.format("%.1f", subscriptionsPerSecond));
+        return run;
+    }
+
+    /**
+     * Get the current or last billing run state.
+     */
+    public BillingRun getCurrentRun() {
+        return billingRunRepository.findById(RECURRING_RUN_ID).orElse(null);
+    }
+
+    /**
+     * Take ownership of the billing run.
+     * A failed or stale (crashed) run is resumed from its checkpoint; a
+     * completed one is replaced by a fresh run. Returns null if a live run
+     * is owned by another node.
+     */
+    private BillingRun claimRun() {
+        LocalDateTime now = LocalDateTime.now();
+        BillingRun current = getCurrentRun();
+
+        if (current == null) {
+            BillingRun run = newRun(now);
+            try {
+                return mongoTemplate.insert(run);
+            } catch (DuplicateKeyException e) {
+                return null;
+            }
+        }
+
+        boolean live = current.getStatus() == BillingRunStatus.RUNNING && current.getHeartbeatAt() != null
+                && current.getHeartbeatAt().isAfter(now.minus(Duration.ofMinutes(staleAfterMinutes)));
+        if (live) {
+            log.debug("Billing run already in progress on {}", current.getOwner());
+            return null;
+        }
+
+        // Conditional on the observed heartbeat so only one node wins the claim
+        Query claim = Query.query(Criteria.where("_id").is(RECURRING_RUN_ID)
+                .and("heartbeatAt").is(current.getHeartbeatAt()));
+        Update update;
+        if (current.getStatus() == BillingRunStatus.COMPLETED) {
+            BillingRun run = newRun(now);
+            update = new Update()
+                    .set("status", run.getStatus())
+                    .set("cutoff", run.getCutoff())
+                    .unset("checkpointDate")
+                    .unset("checkpointId")
+                    .set("processed", 0L)
+                    .set("renewed", 0L)
+                    .set("failed", 0L)
+                    .set("invoicesCreated", 0L)
+                    .unset("subscriptionsPerSecond")
+                    .set("startedAt", now)
+                    .unset("finishedAt")
+                    .unset("lastError");
+        } else {
+            log.warn("Resuming interrupted billing run started at {}", current.getStartedAt());
+            update = new Update()
+                    .set("status", BillingRunStatus.RUNNING)
+                    .unset("finishedAt");
+        }
+        update.set("owner", owner).set("heartbeatAt", now);
+
+        return mongoTemplate.findAndModify(claim, update, FindAndModifyOptions.options().returnNew(true),
+                BillingRun.class);
+    }
+
+    private BillingRun newRun(LocalDateTime now) {
+        return BillingRun.builder()
+                .id(RECURRING_RUN_ID)
+                .status(BillingRunStatus.RUNNING)
+                .owner(owner)
+                .cutoff(now)
+                .startedAt(now)
+                .heartbeatAt(now)
+                .build();
+    }
+
+    private void checkpoint(BillingRun run) {
+        run.setHeartbeatAt(LocalDateTime.now());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(run.getId()).and("owner").is(owner)),
+                new Update()
+                        .set("status", run.getStatus())
+                        .set("checkpointDate", run.getCheckpointDate())
+                        .set("checkpointId", run.getCheckpointId())
+                        .set("processed", run.getProcessed())
+                        .set("renewed", run.getRenewed())
+                        .set("failed", run.getFailed())
+                        .set("invoicesCreated", run.getInvoicesCreated())
+                        .set("subscriptionsPerSecond", run.getSubscriptionsPerSecond())
+                        .set("heartbeatAt", run.getHeartbeatAt())
+                        .set("finishedAt", run.getFinishedAt())
+                        .set("lastError", run.getLastError()),
+                BillingRun.class);
+    }
+
+    /**
+     * Fetch the next wave of due subscriptions after the checkpoint: one page per worker.
+     */
+    private List<Subscription> nextWave(BillingRun run) {
+        Criteria criteria = Criteria.where("status").is(SubscriptionStatus.ACTIVE)
+                .and("autoRenew").is(true)
+                .and("nextBillingDate").lte(run.getCutoff());
+        if (run.getCheckpointDate() != null) {
+            criteria.orOperator(
+                    Criteria.where("nextBillingDate").gt(run.getCheckpointDate()),
+                    Criteria.where("nextBillingDate").is(run.getCheckpointDate())
+                            .and("_id").gt(run.getCheckpointId()));
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Order.asc("nextBillingDate"), Sort.Order.asc("_id")))
+                .limit(partitionSize * parallelism);
+        return mongoTemplate.find(query, Subscription.class);
+    }
+
+    private WaveResult processWave(List<Subscription> wave) {
+        List<CompletableFuture<WaveResult>> partitions = new ArrayList<>();
+        for (int from = 0; from < wave.size(); from += partitionSize) {
+            List<Subscription> partition = wave.subList(from, Math.min(from + partitionSize, wave.size()));
+            partitions.add(CompletableFuture.supplyAsync(() -> renewPartition(partition), executor));
+        }
+
+        WaveResult total = new WaveResult(0, 0, 0);
+        for (int i = 0; i < partitions.size(); i++) {
+            try {
+                total = total.plus(partitions.get(i).join());
+            } catch (Exception e) {
+                // Failed subscriptions keep their due date and are picked up by the next run
+                int size = Math.min(partitionSize, wave.size() - i * partitionSize);
+                log.error("Billing partition failed for {} subscriptions: {}", size, e.getMessage(), e);
+                total = total.plus(new WaveResult(0, size, 0));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Renew one partition: bill the closing period's usage, insert renewal
+     * invoices and advance billing dates, each with a single bulk write.
+     */
+    private WaveResult renewPartition(List<Subscription> subscriptions) {
+        Map<String, Plan> plans = planCatalog.findAllById(subscriptions.stream()
+                .map(Subscription::getPlanId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        Map<String, User> users = userRepository.findAllById(subscriptions.stream()
+                        .map(Subscription::getUserId)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Subscription> renewable = new ArrayList<>();
+        List<MeteredBillingService.PeriodClose> closes = new ArrayList<>();
+        List<Invoice> invoices = new ArrayList<>();
+        BulkOperations advances = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Subscription.class);
+
+        for (Subscription subscription : subscriptions) {
+            Plan plan = plans.get(subscription.getPlanId());
+            if (plan == null) {
+                log.warn("Skipping renewal of subscription {}: plan {} not found", subscription.getId(),
+                        subscription.getPlanId());
+                continue;
+            }
+
+            LocalDateTime periodStart = subscription.getEndDate() != null
+                    ? subscription.getEndDate()
+                    : subscription.getNextBillingDate();
+            LocalDateTime periodEnd = plan.getBillingCycle().periodEnd(periodStart);
+
+            if (subscription.getStartDate() != null && (subscription.getMeteredBilledThrough() == null
+                    || subscription.getMeteredBilledThrough().isBefore(periodStart))) {
+                closes.add(new MeteredBillingService.PeriodClose(subscription, subscription.getStartDate(),
+                        periodStart));
+            }
+
+            Invoice invoice = invoiceService.buildInvoice(subscription, users.get(subscription.getUserId()), plan,
+                    periodStart, periodEnd);
+            invoice.setBillingKey(invoiceService.billingKey(subscription, "renewal", periodStart));
+            invoices.add(invoice);
+
+            // Conditional on the observed due date so a concurrent or repeated renewal cannot advance twice
+            advances.updateOne(Query.query(Criteria.where("_id").is(subscription.getId())
+                            .and("nextBillingDate").is(subscription.getNextBillingDate())),
+                    new Update()
+                            .set("startDate", periodStart)
+                            .set("endDate", periodEnd)
+                            .set("nextBillingDate", periodEnd)
+                            .currentDate("updatedAt")
+                            .inc("version", 1));
+            renewable.add(subscription);
+        }
+
+        int invoiceCount = 0;
+        if (!closes.isEmpty()) {
+            invoiceCount += meteredBillingService.billPartition(closes);
+        }
+
+        List<Invoice> inserted = invoiceService.insertNewInvoices(invoices);
+        invoiceCount += inserted.size();
+        if (!renewable.isEmpty()) {
+            advances.execute();
+        }
+
+        for (Subscription subscription : renewable) {
+            quotaService.invalidate(subscription.getId());
+            usageLookupCache.invalidateSubscription(subscription.getId());
+            activeSubscriptionCache.invalidate(subscription.getUserId());
+        }
+        for (Invoice invoice : inserted) {
+            User user = users.get(invoice.getUserId());
+            if (user != null) {
+                emailService.sendInvoiceEmail(user, invoice);
+            }
+        }
+
+        renewedCounter.increment(renewable.size());
+        return new WaveResult(renewable.size(), subscriptions.size() - renewable.size(), invoiceCount);
+    }
+
+    private double throughput(long processed, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? processed / seconds : 0.0;
+    }
+
+    /**
+     * Expire subscriptions that reached their end date without auto-renew, in one update.
+     */
+    private void expireNonRenewing(LocalDateTime cutoff) {
+        long expired = mongoTemplate.updateMulti(Query.query(Criteria.where("status").is(SubscriptionStatus.ACTIVE)
+                        .and("autoRenew").is(false)
+                        .and("endDate").lte(cutoff)),
+                new Update().set("status", SubscriptionStatus.EXPIRED).currentDate("updatedAt").inc("version", 1),
+                Subscription.class).getModifiedCount();
+        if (expired > 0) {
+            // The update does not report which users were affected
+            activeSubscriptionCache.invalidateAll();
+            log.info("Expired {} subscriptions without auto-renew", expired);
+        }
+    }
+
+    private static String resolveOwner() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        } catch (Exception e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    private record WaveResult(int renewed, int failed, int invoices) {
+
+        private WaveResult plus(WaveResult other) {
+            return new WaveResult(renewed + other.renewed, failed + other.failed, invoices + other.invoices);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.Invoice;
+import com.project.saasbilling.model.InvoiceStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dunning notices for invoices that have gone overdue.
+ * Consumes batches of invoice ids and loads only the fields the reminder
+ * email needs. Each batch is sent on a fixed pool and the call returns once
+ * every reminder in it was delivered or failed, so at most one batch of
+ * invoices is held in memory and the caller knows which notices went out.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DunningService {
+
+    private final MongoTemplate mongoTemplate;
+    private final EmailService emailService;
+
+    @Value("${billing.dunning.workers:4}")
+    private int workers;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "dunning-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Send overdue reminders for a batch of invoices still overdue.
+     *
+     * @return ids of the invoices that are done with: reminder delivered, no
+     * longer overdue or without an email address; failed ones are left out
+     */
+    public List<String> sendOverdueNotices(List<String> invoiceIds) {
+        Query query = Query.query(Criteria.where("_id").in(invoiceIds).and("status").is(InvoiceStatus.OVERDUE));
+        query.fields().include("invoiceNumber", "userEmail", "userName", "totalAmount", "currency", "dueDate");
+
+        List<Invoice> invoices = mongoTemplate.find(query, Invoice.class);
+        List<CompletableFuture<Boolean>> deliveries = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            deliveries.add(CompletableFuture.supplyAsync(() -> send(invoice), executor));
+        }
+
+        Set<String> failed = new HashSet<>();
+        for (int i = 0; i < invoices.size(); i++) {
+            if (!deliveries.get(i).join()) {
+                failed.add(invoices.get(i).getId());
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.warn("Failed to send {} of {} overdue notices, retried on the next run", failed.size(),
+                    invoices.size());
+        }
+        log.debug("Sent {} overdue notices", invoices.size() - failed.size());
+        return invoiceIds.stream().filter(id -> !failed.contains(id)).toList();
+    }
+
+    private boolean send(Invoice invoice) {
+        if (invoice.getUserEmail() == null) {
+            return true;
+        }
+        try {
+            emailService.sendInvoiceOverdueEmail(invoice);
+            return true;
+        } catch (Exception e) {
+            log.debug("Overdue notice for invoice {} failed: {}", invoice.getInvoiceNumber(), e.getMessage());
+            return false;
+        }
+    }
+}
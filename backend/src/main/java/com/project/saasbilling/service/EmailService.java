@@ -57,6 +57,17 @@ public class EmailService {
         sendEmail(user.getEmail(), subject, content);
     }
 
+    /**
+     * Send overdue invoice reminder email on the calling thread.
+     * Dunning sends on its own bounded pool and only records invoices whose
+     * reminder was delivered, so failures are thrown rather than logged.
+     */
+    public void sendInvoiceOverdueEmail(Invoice invoice) throws MessagingException {
+        String subject = "Invoice " + invoice.getInvoiceNumber() + " is overdue";
+        String content = buildInvoiceOverdueEmail(invoice);
+        deliver(invoice.getUserEmail(), subject, content);
+    }
+
     /**
      * Send payment confirmation email.
      */
@@ -72,16 +83,7 @@ public class EmailService {
      */
     private void sendEmail(String to, String subject, String htmlContent) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            helper.setFrom(fromEmail);
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email sent successfully to: {}", to);
+            deliver(to, subject, htmlContent);
         } catch (MessagingException e) {
             log.error("Failed to send email to {}: {}", to, e.getMessage());
         } catch (Exception e) {
@@ -89,6 +91,19 @@ public class EmailService {
         }
     }
 
+    private void deliver(String to, String subject, String htmlContent) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+
+        helper.setFrom(fromEmail);
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(htmlContent, true);
+
+        mailSender.send(message);
+        log.info("Email sent successfully to: {}", to);
+    }
+
     private String buildSubscriptionCreatedEmail(User user, Subscription subscription) {
         return """
                 <!DOCTYPE html>
@@ -216,6 +231,51 @@ public class EmailService {
                 appName);
     }
 
+    private String buildInvoiceOverdueEmail(Invoice invoice) {
+        return """
+                <!DOCTYPE html>
+                <html>
+                <head>
+                    <style>
+                        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }
+                        .container { max-width: 600px; margin: 0 auto; padding: 20px; }
+                        .header { background: #DC2626; color: white; padding: 20px; text-align: center; }
+                        .content { padding: 20px; background: #f9f9f9; }
+                        .invoice-box { background: white; padding: 20px; border: 1px solid #ddd; margin: 20px 0; }
+                        .footer { text-align: center; padding: 20px; font-size: 12px; color: #666; }
+                    </style>
+                </head>
+                <body>
+                    <div class="container">
+                        <div class="header">
+                            <h1>Invoice %s is overdue</h1>
+                        </div>
+                        <div class="content">
+                            <p>Hi %s,</p>
+                            <p>We have not yet received payment for the invoice below.</p>
+                            <div class="invoice-box">
+                                <p><strong>Invoice Number:</strong> %s</p>
+                                <p><strong>Amount:</strong> %s %s</p>
+                                <p><strong>Due Date:</strong> %s</p>
+                            </div>
+                            <p>Please make payment as soon as possible to avoid service interruption.</p>
+                        </div>
+                        <div class="footer">
+                            <p>© 2024 %s. All rights reserved.</p>
+                        </div>
+                    </div>
+                </body>
+                </html>
+                """.formatted(
+                invoice.getInvoiceNumber(),
+                invoice.getUserName() != null ? invoice.getUserName() : invoice.getUserEmail(),
+                invoice.getInvoiceNumber(),
+                invoice.getCurrency(),
+                invoice.getTotalAmount(),
+                invoice.getDueDate(),
+                appName);
+    }
+
     private String buildPaymentConfirmationEmail(User user, PaymentLog payment, Invoice invoice) {
         return """
                 <!DOCTYPE html>
@@ -105,6 +105,37 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Store a file generated by the platform for a user, replacing an earlier
+     * version with the same stored name.
+     */
+    public UploadedFile storeGeneratedFile(String userId, String userEmail, String fileName, String contentType,
+            byte[] content) {
+        try {
+            Path userUploadPath = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(userId);
+            Files.createDirectories(userUploadPath);
+            Path targetLocation = userUploadPath.resolve(fileName);
+            Files.write(targetLocation, content);
+
+            UploadedFile uploadedFile = uploadedFileRepository.findByFileName(fileName)
+                    .orElseGet(() -> UploadedFile.builder()
+                            .userId(userId)
+                            .userEmail(userEmail)
+                            .fileName(fileName)
+                            .originalFileName(fileName)
+                            .contentType(contentType)
+                            .fileType(determineFileType(contentType))
+                            .storageType("LOCAL")
+                            .build());
+            uploadedFile.setFilePath(targetLocation.toString());
+            uploadedFile.setFileSize((long) content.length);
+            return uploadedFileRepository.save(uploadedFile);
+        } catch (IOException e) {
+            log.error("Failed to store generated file {}: {}", fileName, e.getMessage());
+            throw new BadRequestException("Failed to store file: " + e.getMessage());
+        }
+    }
+
     /**
      * Get file by ID.
      */
@@ -0,0 +1,222 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.exception.GatewayUnavailableException;
+import com.project.saasbilling.util.AdaptiveConcurrencyLimit;
+import com.project.saasbilling.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Failure isolation for payment gateway calls.
+ * Each operation (payment, refund, order) has its own adaptive concurrency
+ * limit, time limit and circuit breaker, so a slow or failing gateway
+ * rejects callers immediately instead of tying up request threads. Calls run
+ * on virtual threads and the caller stops waiting at the time limit; the
+ * concurrency slot is held until the gateway call actually returns.
+ * A timed-out call may still complete at the gateway, so callers must treat
+ * a timeout as an unknown outcome rather than a failure.
+ * Settings are read per operation as gateway.{operation}.{setting}, falling
+ * back to gateway.{setting}.
+ */
+@Service
+@Slf4j
+public class GatewayGuard {
+
+    private static final long OPEN_RECHECK_MILLIS = 500;
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GatewayGuard(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Run a gateway call under the guard of its operation.
+     *
+     * @throws GatewayUnavailableException when the call is rejected or times out
+     */
+    public <T> T call(String operation, Supplier<T> call) {
+        Guard guard = guards.computeIfAbsent(operation, this::createGuard);
+
+        if (!guard.limit.tryAcquire()) {
+            guard.rejectedBusy.increment();
+            throw new GatewayUnavailableException("Payment gateway is busy, please retry shortly");
+        }
+        if (!guard.breaker.tryAcquirePermission()) {
+            guard.limit.releaseUnused();
+            guard.rejectedOpen.increment();
+            throw new GatewayUnavailableException("Payment gateway is temporarily unavailable");
+        }
+        return invoke(operation, guard, call);
+    }
+
+    /**
+     * Run a gateway call for background work that can wait: instead of being
+     * rejected, the caller queues for a concurrency slot and for an open
+     * circuit to let calls through again, for up to {@code maxWaitMillis}.
+     *
+     * @throws GatewayUnavailableException when no slot became available in time or the call times out
+     */
+    public <T> T callWhenAvailable(String operation, Supplier<T> call, long maxWaitMillis) {
+        Guard guard = guards.computeIfAbsent(operation, this::createGuard);
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        try {
+            while (true) {
+                if (!guard.limit.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    guard.rejectedBusy.increment();
+                    throw new GatewayUnavailableException("Payment gateway stayed busy for " + maxWaitMillis + " ms");
+                }
+                if (guard.breaker.tryAcquirePermission()) {
+                    break;
+                }
+                guard.limit.releaseUnused();
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    guard.rejectedOpen.increment();
+                    throw new GatewayUnavailableException("Payment gateway stayed unavailable for "
+                            + maxWaitMillis + " ms");
+                }
+                // Wait for the open period to pass before asking the circuit again
+                TimeUnit.NANOSECONDS.sleep(Math.min(remainingNanos,
+                        TimeUnit.MILLISECONDS.toNanos(OPEN_RECHECK_MILLIS)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GatewayUnavailableException("Interrupted while waiting for the payment gateway");
+        }
+        return invoke(operation, guard, call);
+    }
+
+    /**
+     * Run an admitted call on a virtual thread and stop waiting at the time limit.
+     */
+    private <T> T invoke(String operation, Guard guard, Supplier<T> call) {
+        long startNanos = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                boolean failed = true;
+                try {
+                    T result = call.get();
+                    failed = false;
+                    return result;
+                } finally {
+                    guard.limit.release(System.nanoTime() - startNanos, failed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            guard.limit.releaseUnused();
+            guard.breaker.onFailure();
+            throw new GatewayUnavailableException("Payment gateway is temporarily unavailable");
+        }
+
+        try {
+            T result = future.get(guard.timeoutMillis, TimeUnit.MILLISECONDS);
+            guard.breaker.onSuccess();
+            guard.success.increment();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            guard.breaker.onFailure();
+            guard.timeout.increment();
+            log.warn("Gateway {} call timed out after {} ms", operation, guard.timeoutMillis);
+            throw new GatewayUnavailableException("Payment gateway timed out");
+        } catch (ExecutionException e) {
+            guard.breaker.onFailure();
+            guard.failure.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new GatewayUnavailableException("Payment gateway call failed: " + cause.getMessage());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GatewayUnavailableException("Payment gateway call interrupted");
+        } finally {
+            guard.duration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Current circuit state of an operation.
+     */
+    public CircuitBreaker.State getState(String operation) {
+        return guards.computeIfAbsent(operation, this::createGuard).breaker.getState();
+    }
+
+    private Guard createGuard(String operation) {
+        long timeoutMillis = setting(operation, "timeout-ms", 2000);
+        CircuitBreaker breaker = new CircuitBreaker(
+                (int) setting(operation, "circuit.window-size", 20),
+                (int) setting(operation, "circuit.minimum-calls", 10),
+                (int) setting(operation, "circuit.failure-rate-threshold", 50),
+                setting(operation, "circuit.open-ms", 30000),
+                (int) setting(operation, "circuit.half-open-probes", 3));
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                (int) setting(operation, "min-concurrency", 2),
+                (int) setting(operation, "max-concurrency", 20),
+                setting(operation, "latency-target-ms", timeoutMillis / 2));
+
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("gateway.circuit.state", breaker, b -> b.getState() == state ? 1 : 0)
+                    .description("1 when the gateway circuit of the operation is in this state")
+                    .tag("operation", operation)
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("gateway.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .tag("operation", operation)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("operation", operation)
+                .register(meterRegistry);
+
+        return new Guard(breaker, limit, timeoutMillis,
+                callCounter(operation, "success"),
+                callCounter(operation, "failure"),
+                callCounter(operation, "timeout"),
+                callCounter(operation, "rejected_open"),
+                callCounter(operation, "rejected_busy"),
+                Timer.builder("gateway.call.duration")
+                        .tag("operation", operation)
+                        .register(meterRegistry));
+    }
+
+    private Counter callCounter(String operation, String outcome) {
+        return Counter.builder("gateway.calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private long setting(String operation, String key, long defaultValue) {
+        Long fallback = environment.getProperty("gateway." + key, Long.class, defaultValue);
+        return environment.getProperty("gateway." + operation + "." + key, Long.class, fallback);
+    }
+
+    private record Guard(CircuitBreaker breaker, AdaptiveConcurrencyLimit limit, long timeoutMillis,
+            Counter success, Counter failure, Counter timeout, Counter rejectedOpen, Counter rejectedBusy,
+            Timer duration) {
+    }
+}
@@ -0,0 +1,115 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.IdSequence;
+import com.project.saasbilling.model.InvoiceNumberMode;
+import com.project.saasbilling.util.HiLoSequence;
+import com.project.saasbilling.util.IdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates transaction ids, order ids and invoice numbers.
+ * Ids come from the node-local IdGenerator without any shared state. In
+ * SEQUENCE mode invoice numbers are consecutive per month instead, taken from
+ * blocks reserved in MongoDB ahead of use so numbering needs no database
+ * round trip on the request path.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdGenerationService {
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final IdGenerator idGenerator;
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, HiLoSequence> invoiceSequences = new ConcurrentHashMap<>();
+
+    @Value("${billing.invoice-number.mode:RANDOM}")
+    private InvoiceNumberMode invoiceNumberMode;
+
+    @Value("${billing.invoice-number.block-size:50}")
+    private int invoiceBlockSize;
+
+    private ExecutorService prefetchExecutor;
+
+    @PostConstruct
+    public void init() {
+        prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "id-sequence-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdown();
+    }
+
+    /**
+     * Payment transaction id.
+     */
+    public String transactionId() {
+        return "TXN-" + idGenerator.nextIdString();
+    }
+
+    /**
+     * Payment order id.
+     */
+    public String orderId() {
+        return "order_" + idGenerator.nextIdString();
+    }
+
+    /**
+     * Invoice number for the current month.
+     */
+    public String invoiceNumber() {
+        String month = YearMonth.now().format(MONTH_FORMAT);
+        String prefix = "INV-" + month + "-";
+        if (invoiceNumberMode != InvoiceNumberMode.SEQUENCE) {
+            return prefix + idGenerator.nextIdString();
+        }
+        return prefix + String.format("%06d", invoiceSequence(month).next());
+    }
+
+    private HiLoSequence invoiceSequence(String month) {
+        HiLoSequence sequence = invoiceSequences.get(month);
+        if (sequence == null) {
+            sequence = invoiceSequences.computeIfAbsent(month, key -> new HiLoSequence(invoiceBlockSize,
+                    () -> reserveBlock("invoice-" + key, invoiceBlockSize), prefetchExecutor));
+            // Earlier months are finished; their unused values are the only gaps
+            invoiceSequences.keySet().removeIf(key -> key.compareTo(month) < 0);
+        }
+        return sequence;
+    }
+
+    /**
+     * Reserve the next block of a named sequence and return its highest value.
+     */
+    private long reserveBlock(String name, int blockSize) {
+        IdSequence sequence = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(name)),
+                new Update().inc("value", blockSize),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                IdSequence.class);
+        log.debug("Reserved {} values of sequence {} up to {}", blockSize, name, sequence.getValue());
+        return sequence.getValue();
+    }
+}
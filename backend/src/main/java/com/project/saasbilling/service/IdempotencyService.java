@@ -0,0 +1,288 @@
+package com.project.saasbilling.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.exception.ConflictException;
+import com.project.saasbilling.util.BoundedTtlCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for non-idempotent POST endpoints.
+ * The first successful response for a (scope, user, key) is stored in Redis
+ * and in a local cache, and replayed for retries. Duplicates arriving while
+ * the first request is still running wait for its result: on the same node
+ * through a shared future, across nodes by polling Redis while another node
+ * holds the key's lock. If Redis is unavailable the local cache alone is used.
+ * Failed requests are not stored, so a retry after an error runs again.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final long POLL_INTERVAL_MILLIS = 50;
+    private static final String RESULT_PREFIX = "idempotency:";
+    private static final String LOCK_PREFIX = "idempotency:lock:";
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * Stored outcome of the first execution.
+     */
+    public record StoredResponse(int status, String fingerprint, String body, String location) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final BoundedTtlCache<String, StoredResponse> localResults;
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+
+    @Value("${idempotency.wait-ms:10000}")
+    private long waitMillis;
+
+    @Value("${idempotency.lock-ttl-ms:30000}")
+    private long lockTtlMillis;
+
+    public IdempotencyService(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+            @Value("${idempotency.ttl-hours:24}") long ttlHours,
+            @Value("${idempotency.local.max-size:10000}") int localMaxSize) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.localResults = new BoundedTtlCache<>(localMaxSize, ttl);
+    }
+
+    /**
+     * Run the action once per idempotency key, replaying the stored response
+     * for repeats. Without a key the action simply runs.
+     */
+    public <T> ResponseEntity<T> execute(String scope, String userId, String idempotencyKey, Object request,
+            Class<T> bodyType, Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String scopedKey = scope + ":" + userId + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+
+        StoredResponse stored = lookup(scopedKey);
+        if (stored != null) {
+            return replay(stored, fingerprint, bodyType);
+        }
+
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(scopedKey, mine);
+        if (running != null) {
+            return replay(await(running), fingerprint, bodyType);
+        }
+
+        String lockToken = null;
+        try {
+            lockToken = acquireLock(scopedKey);
+            if (lockToken == null) {
+                // Another node is executing this key
+                stored = awaitRemote(scopedKey);
+                mine.complete(stored);
+                return replay(stored, fingerprint, bodyType);
+            }
+            // The first request may have stored its result and released the lock since the lookup above
+            stored = lookup(scopedKey);
+            if (stored != null) {
+                mine.complete(stored);
+                return replay(stored, fingerprint, bodyType);
+            }
+
+            ResponseEntity<T> response = action.get();
+            stored = toStored(response, fingerprint);
+            if (response.getStatusCode().is2xxSuccessful()) {
+                store(scopedKey, stored);
+            }
+            mine.complete(stored);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(scopedKey, mine);
+            releaseLock(scopedKey, lockToken);
+        }
+    }
+
+    private StoredResponse lookup(String scopedKey) {
+        StoredResponse stored = localResults.getIfPresent(scopedKey);
+        if (stored != null) {
+            return stored;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(RESULT_PREFIX + scopedKey);
+            if (json != null) {
+                stored = objectMapper.readValue(json, StoredResponse.class);
+                localResults.put(scopedKey, stored);
+            }
+        } catch (Exception e) {
+            log.debug("Idempotency lookup in Redis failed, using local cache only: {}", e.getMessage());
+        }
+        return stored;
+    }
+
+    private void store(String scopedKey, StoredResponse stored) {
+        localResults.put(scopedKey, stored);
+        try {
+            redisTemplate.opsForValue().set(RESULT_PREFIX + scopedKey, objectMapper.writeValueAsString(stored), ttl);
+        } catch (Exception e) {
+            log.warn("Failed to store idempotent response in Redis: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Take the cross-node lock for a key. Returns the lock token, a local token
+     * when Redis is unavailable, or null if another node holds the lock.
+     */
+    private String acquireLock(String scopedKey) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + scopedKey, token,
+                    Duration.ofMillis(lockTtlMillis));
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (Exception e) {
+            log.debug("Idempotency lock unavailable, relying on local coordination: {}", e.getMessage());
+            return token;
+        }
+    }
+
+    private void releaseLock(String scopedKey, String token) {
+        if (token == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_PREFIX + scopedKey), token);
+        } catch (Exception e) {
+            log.debug("Failed to release idempotency lock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for another node to finish the key. If its lock disappears without
+     * a stored result, that request failed and this one may run instead.
+     */
+    private StoredResponse awaitRemote(String scopedKey) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (System.nanoTime() < deadline) {
+            sleep();
+            StoredResponse stored = lookup(scopedKey);
+            if (stored != null) {
+                return stored;
+            }
+            if (!lockHeld(scopedKey)) {
+                throw new ConflictException("The original request with this " + HEADER + " failed; please retry");
+            }
+        }
+        throw new ConflictException("A request with this " + HEADER + " is still in progress");
+    }
+
+    /**
+     * Whether another node still holds the key's lock. If Redis cannot be
+     * reached the lock is assumed held, so this request keeps waiting on the
+     * local cache rather than running the action a second time.
+     */
+    private boolean lockHeld(String scopedKey) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(LOCK_PREFIX + scopedKey));
+        } catch (Exception e) {
+            log.debug("Idempotency lock check in Redis failed, still waiting: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ConflictException("A request with this " + HEADER + " is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("A request with this " + HEADER + " is still in progress");
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(StoredResponse stored, String fingerprint, Class<T> bodyType) {
+        if (!stored.fingerprint().equals(fingerprint)) {
+            throw new ConflictException(HEADER + " was already used with a different request");
+        }
+        try {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status())
+                    .header(REPLAYED_HEADER, "true");
+            if (stored.location() != null) {
+                builder.location(URI.create(stored.location()));
+            }
+            return builder.body(stored.body() != null ? objectMapper.readValue(stored.body(), bodyType) : null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to replay stored response", e);
+        }
+    }
+
+    private StoredResponse toStored(ResponseEntity<?> response, String fingerprint) {
+        try {
+            URI location = response.getHeaders().getLocation();
+            return new StoredResponse(response.getStatusCode().value(), fingerprint,
+                    response.getBody() != null ? objectMapper.writeValueAsString(response.getBody()) : null,
+                    location != null ? location.toString() : null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to store response", e);
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to fingerprint request", e);
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("A request with this " + HEADER + " is still in progress");
+        }
+    }
+}
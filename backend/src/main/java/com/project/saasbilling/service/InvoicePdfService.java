@@ -0,0 +1,377 @@
+package com.project.saasbilling.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.project.saasbilling.exception.ResourceNotFoundException;
+import com.project.saasbilling.model.BillingRunStatus;
+import com.project.saasbilling.model.Invoice;
+import com.project.saasbilling.model.InvoicePdfJob;
+import com.project.saasbilling.model.UploadedFile;
+import com.project.saasbilling.repository.InvoicePdfJobRepository;
+import com.project.saasbilling.util.InvoiceTemplate;
+import com.project.saasbilling.util.SimplePdfWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Renders invoice PDFs off the request path.
+ * Templates are compiled once and cached by name. New invoices are queued
+ * on a small bounded worker pool. A billing run waits for room in the queue,
+ * so it is slowed to the render rate rather than dropping PDFs; single
+ * invoices are left without a PDF when the queue is full. A scheduled sweep
+ * queues invoices still missing a PDF after a grace period, which also
+ * covers failed renders and renders lost with a node. Bulk re-renders run as
+ * background jobs, one at a time per node, and stream invoices through a
+ * pool sized to the available cores.
+ */
+@Service
+@Slf4j
+public class InvoicePdfService {
+
+    private static final String TEMPLATE_NAME = "invoice";
+    private static final String CONTENT_TYPE = "application/pdf";
+
+    private static final String DEFAULT_TEMPLATE = """
+            #{appName}
+            !Invoice {invoiceNumber}
+
+            Billed to: {userName}
+            Email: {userEmail}
+            Invoice date: {invoiceDate}
+            Due date: {dueDate}
+            Billing period: {billingPeriodStart} to {billingPeriodEnd}
+            Status: {status}
+
+            !Items
+            [items]
+            {description}: {billableQuantity} x {unitPrice} = {amount}
+            [/items]
+
+            Subtotal: {currency} {amount}
+            Tax: {currency} {taxAmount}
+            Discount: {currency} {discountAmount}
+            !Total: {currency} {totalAmount}
+            """;
+
+    private final FileStorageService fileStorageService;
+    private final MongoTemplate mongoTemplate;
+    private final InvoicePdfJobRepository invoicePdfJobRepository;
+    private final Map<String, InvoiceTemplate> templates = new ConcurrentHashMap<>();
+    private final Timer renderTimer;
+    private final Counter rejectedCounter;
+
+    @Value("${spring.application.name:SaaS Billing Platform}")
+    private String appName;
+
+    @Value("${billing.invoice-pdf.template-dir:}")
+    private String templateDir;
+
+    @Value("${billing.invoice-pdf.workers:2}")
+    private int workers;
+
+    @Value("${billing.invoice-pdf.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${billing.invoice-pdf.enqueue-timeout-ms:30000}")
+    private long enqueueTimeoutMillis;
+
+    @Value("${billing.invoice-pdf.sweep-grace-ms:600000}")
+    private long sweepGraceMillis;
+
+    @Value("${billing.invoice-pdf.sweep-batch-size:500}")
+    private int sweepBatchSize;
+
+    // Queued plus running renders, so the executor never has to reject one
+    private Semaphore renderSlots;
+    private ExecutorService renderExecutor;
+    private ExecutorService jobExecutor;
+
+    public InvoicePdfService(FileStorageService fileStorageService, MongoTemplate mongoTemplate,
+            InvoicePdfJobRepository invoicePdfJobRepository, MeterRegistry meterRegistry) {
+        this.fileStorageService = fileStorageService;
+        this.mongoTemplate = mongoTemplate;
+        this.invoicePdfJobRepository = invoicePdfJobRepository;
+        this.renderTimer = Timer.builder("invoice.pdf.render")
+                .description("Time to render and store an invoice PDF")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("invoice.pdf.rejected")
+                .description("Invoice PDF renders left for the missing-PDF sweep because the render queue was full")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        renderSlots = new Semaphore(workers + queueCapacity);
+        renderExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads("invoice-pdf-"));
+        jobExecutor = Executors.newSingleThreadExecutor(daemonThreads("invoice-pdf-job-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdown();
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue an invoice for rendering, leaving it for the missing-PDF sweep when the queue is full.
+     */
+    public void renderAsync(Invoice invoice) {
+        if (!renderSlots.tryAcquire()) {
+            rejectedCounter.increment();
+            log.warn("Invoice PDF queue full, {} left for the missing-PDF sweep", invoice.getInvoiceNumber());
+            return;
+        }
+        submit(invoice);
+    }
+
+    /**
+     * Queue invoices for rendering, waiting for room in the queue instead of
+     * dropping renders. Invoices that still find no room within the enqueue
+     * timeout, e.g. while storage is down, are left for the missing-PDF sweep.
+     */
+    public void renderAll(List<Invoice> invoices) {
+        for (int i = 0; i < invoices.size(); i++) {
+            boolean acquired;
+            try {
+                acquired = renderSlots.tryAcquire(enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejectedCounter.increment(invoices.size() - i);
+                log.warn("Invoice PDF queue stalled, {} invoices left for the missing-PDF sweep", invoices.size() - i);
+                return;
+            }
+            submit(invoices.get(i));
+        }
+    }
+
+    /**
+     * Queue invoices created more than the grace period ago that still have no
+     * PDF, as many as fit in the queue. A render that fails is retried once
+     * its claim is older than the grace period.
+     */
+    @Scheduled(fixedDelayString = "${billing.invoice-pdf.sweep-interval-ms:300000}")
+    public void sweepMissingPdfs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(sweepGraceMillis));
+        Query query = Query.query(missingPdf(cutoff))
+                .with(Sort.by(Sort.Order.asc("createdAt")))
+                .limit(sweepBatchSize);
+
+        int queued = 0;
+        for (Invoice invoice : mongoTemplate.find(query, Invoice.class)) {
+            if (!renderSlots.tryAcquire()) {
+                break;
+            }
+            // Claim it so the sweep on another node does not render it as well
+            Criteria unclaimed = new Criteria().andOperator(
+                    Criteria.where("_id").is(invoice.getId()), missingPdf(cutoff));
+            UpdateResult claim = mongoTemplate.updateFirst(Query.query(unclaimed),
+                    Update.update("pdfSweptAt", LocalDateTime.now()), Invoice.class);
+            if (claim.getModifiedCount() == 0) {
+                renderSlots.release();
+                continue;
+            }
+            submit(invoice);
+            queued++;
+        }
+        if (queued > 0) {
+            log.info("Queued {} invoices still missing a PDF for rendering", queued);
+        }
+    }
+
+    private static Criteria missingPdf(LocalDateTime cutoff) {
+        return Criteria.where("pdfUrl").is(null).and("createdAt").lt(cutoff)
+                .orOperator(Criteria.where("pdfSweptAt").is(null), Criteria.where("pdfSweptAt").lt(cutoff));
+    }
+
+    /**
+     * Hand an invoice holding a render slot to the workers, which release the slot when done.
+     */
+    private void submit(Invoice invoice) {
+        try {
+            renderExecutor.execute(() -> {
+                try {
+                    render(invoice);
+                } catch (Exception e) {
+                    log.error("Failed to render PDF for invoice {}: {}", invoice.getInvoiceNumber(), e.getMessage());
+                } finally {
+                    renderSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Only once shutting down
+            renderSlots.release();
+            log.warn("Invoice PDF workers stopped, {} left for the missing-PDF sweep", invoice.getInvoiceNumber());
+        }
+    }
+
+    /**
+     * Render an invoice, store the PDF and set its pdfUrl.
+     *
+     * @return the pdfUrl
+     */
+    public String render(Invoice invoice) {
+        return renderTimer.record(() -> {
+            byte[] pdf = SimplePdfWriter.write(template(TEMPLATE_NAME).render(invoice));
+            UploadedFile file = fileStorageService.storeGeneratedFile(invoice.getUserId(), invoice.getUserEmail(),
+                    "invoice-" + invoice.getInvoiceNumber() + ".pdf", CONTENT_TYPE, pdf);
+
+            String pdfUrl = "/api/files/" + file.getId() + "/download";
+            mongoTemplate.updateFirst(Query.query(Criteria.where("invoiceNumber").is(invoice.getInvoiceNumber())),
+                    Update.update("pdfUrl", pdfUrl), Invoice.class);
+            return pdfUrl;
+        });
+    }
+
+    /**
+     * Start a background re-render of invoices of a month (or all invoices
+     * when month is null). Jobs queue behind each other on this node.
+     *
+     * @return the job, whose status can be polled with {@link #getJob}
+     */
+    public InvoicePdfJob startRerender(YearMonth month, boolean missingOnly) {
+        InvoicePdfJob job = invoicePdfJobRepository.save(InvoicePdfJob.builder()
+                .status(BillingRunStatus.RUNNING)
+                .month(month != null ? month.toString() : null)
+                .missingOnly(missingOnly)
+                .startedAt(LocalDateTime.now())
+                .build());
+
+        jobExecutor.execute(() -> {
+            try {
+                RerenderResult result = rerender(month, missingOnly);
+                job.setRendered(result.rendered());
+                job.setFailed(result.failed());
+                job.setStatus(BillingRunStatus.COMPLETED);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                job.setStatus(BillingRunStatus.FAILED);
+                job.setLastError(e.getMessage());
+                log.error("Invoice PDF re-render job {} failed: {}", job.getId(), e.getMessage());
+            }
+            job.setFinishedAt(LocalDateTime.now());
+            invoicePdfJobRepository.save(job);
+        });
+        return job;
+    }
+
+    /**
+     * Get a re-render job by id.
+     */
+    public InvoicePdfJob getJob(String id) {
+        return invoicePdfJobRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("InvoicePdfJob", "id", id));
+    }
+
+    /**
+     * Re-render matching invoices using every available core. Invoices are
+     * streamed, with the number in flight bounded so memory stays flat
+     * regardless of volume.
+     */
+    private RerenderResult rerender(YearMonth month, boolean missingOnly) throws InterruptedException {
+        Criteria criteria = new Criteria();
+        if (month != null) {
+            criteria = criteria.and("invoiceDate").gte(month.atDay(1)).lte(month.atEndOfMonth());
+        }
+        if (missingOnly) {
+            criteria = criteria.and("pdfUrl").is(null);
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ExecutorService bulkExecutor = Executors.newFixedThreadPool(parallelism, daemonThreads("invoice-pdf-bulk-"));
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        AtomicLong rendered = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long startNanos = System.nanoTime();
+
+        Query query = Query.query(criteria).cursorBatchSize(parallelism * 32);
+        try (Stream<Invoice> invoices = mongoTemplate.stream(query, Invoice.class)) {
+            invoices.forEach(invoice -> {
+                inFlight.acquireUninterruptibly();
+                bulkExecutor.execute(() -> {
+                    try {
+                        render(invoice);
+                        rendered.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        log.error("Failed to re-render invoice {}: {}", invoice.getInvoiceNumber(), e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            });
+        } finally {
+            bulkExecutor.shutdown();
+        }
+        while (!bulkExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.info("Re-rendering invoice PDFs, {} rendered so far", rendered.get());
+        }
+
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 0.001);
+        log.info("Re-rendered {} invoice PDFs on {} threads ({} failed), {} invoices/s", rendered.get(),
+                parallelism, failed.get(), String.format("%.1f", rendered.get() / seconds));
+        return new RerenderResult(rendered.get(), failed.get());
+    }
+
+    private record RerenderResult(long rendered, long failed) {
+    }
+
+    /**
+     * Compiled template by name; a file named {name}.tpl in the template
+     * directory overrides the built-in layout.
+     */
+    private InvoiceTemplate template(String name) {
+        return templates.computeIfAbsent(name, key -> {
+            String source = DEFAULT_TEMPLATE;
+            if (!templateDir.isBlank()) {
+                Path path = Paths.get(templateDir, key + ".tpl");
+                try {
+                    if (Files.exists(path)) {
+                        source = Files.readString(path);
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to read invoice template {}, using default: {}", path, e.getMessage());
+                }
+            }
+            return InvoiceTemplate.compile(source, Map.of("appName", appName));
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
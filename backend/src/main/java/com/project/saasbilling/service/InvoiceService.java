@@ -1,24 +1,42 @@
 package com.project.saasbilling.service;
 
+import com.project.saasbilling.dto.CursorPageResponse;
 import com.project.saasbilling.dto.InvoiceResponse;
 import com.project.saasbilling.dto.PageResponse;
 import com.project.saasbilling.exception.BadRequestException;
 import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.*;
 import com.project.saasbilling.repository.InvoiceRepository;
+import com.project.saasbilling.util.CursorPager;
 import com.project.saasbilling.util.DtoMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.UUID;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for invoice management operations.
@@ -31,9 +49,18 @@ public class InvoiceService {
 
     private final InvoiceRepository invoiceRepository;
     private final EmailService emailService;
+    private final DunningService dunningService;
+    private final IdGenerationService idGenerationService;
+    private final InvoicePdfService invoicePdfService;
+    private final MongoTemplate mongoTemplate;
     private final DtoMapper dtoMapper;
+    private final CursorPager cursorPager;
+
+    @Value("${billing.overdue.batch-size:1000}")
+    private int overdueBatchSize;
 
     private static final BigDecimal TAX_RATE = new BigDecimal("0.10"); // 10% tax
+    private static final int DUPLICATE_KEY_ERROR = 11000;
 
     /**
      * Generate invoice for a subscription.
@@ -41,17 +68,35 @@ public class InvoiceService {
     public Invoice generateInvoice(Subscription subscription, User user, Plan plan) {
         log.info("Generating invoice for subscription: {}", subscription.getId());
 
+        Invoice invoice = buildInvoice(subscription, user, plan,
+                subscription.getStartDate() != null ? subscription.getStartDate() : LocalDateTime.now(),
+                subscription.getEndDate() != null ? subscription.getEndDate() : LocalDateTime.now().plusMonths(1));
+
+        invoice = invoiceRepository.save(invoice);
+        log.info("Invoice generated: {}", invoice.getInvoiceNumber());
+
+        emailService.sendInvoiceEmail(user, invoice);
+        invoicePdfService.renderAsync(invoice);
+
+        return invoice;
+    }
+
+    /**
+     * Build (without saving) a plan invoice for a subscription billing period.
+     */
+    public Invoice buildInvoice(Subscription subscription, User user, Plan plan, LocalDateTime periodStart,
+            LocalDateTime periodEnd) {
         BigDecimal amount = plan.getPrice();
         BigDecimal taxAmount = amount.multiply(TAX_RATE);
         BigDecimal totalAmount = amount.add(taxAmount);
 
-        Invoice invoice = Invoice.builder()
-                .invoiceNumber(generateInvoiceNumber())
-                .userId(user.getId())
+        return Invoice.builder()
+                .invoiceNumber(idGenerationService.invoiceNumber())
+                .userId(subscription.getUserId())
                 .subscriptionId(subscription.getId())
                 // Denormalized fields
-                .userEmail(user.getEmail())
-                .userName(user.getFullName())
+                .userEmail(user != null ? user.getEmail() : subscription.getUserEmail())
+                .userName(user != null ? user.getFullName() : null)
                 .planName(plan.getName())
                 .amount(amount)
                 .taxAmount(taxAmount)
@@ -61,18 +106,9 @@ public class InvoiceService {
                 .status(InvoiceStatus.PENDING)
                 .invoiceDate(LocalDate.now())
                 .dueDate(LocalDate.now().plusDays(14))
-                .billingPeriodStart(subscription.getStartDate() != null ? subscription.getStartDate().toLocalDate()
-                        : LocalDate.now())
-                .billingPeriodEnd(subscription.getEndDate() != null ? subscription.getEndDate().toLocalDate()
-                        : LocalDate.now().plusMonths(1))
+                .billingPeriodStart(periodStart.toLocalDate())
+                .billingPeriodEnd(periodEnd.toLocalDate())
                 .build();
-
-        invoice = invoiceRepository.save(invoice);
-        log.info("Invoice generated: {}", invoice.getInvoiceNumber());
-
-        emailService.sendInvoiceEmail(user, invoice);
-
-        return invoice;
     }
 
     /**
@@ -92,7 +128,7 @@ public class InvoiceService {
         BigDecimal totalAmount = priceDiff.add(taxAmount);
 
         Invoice invoice = Invoice.builder()
-                .invoiceNumber(generateInvoiceNumber())
+                .invoiceNumber(idGenerationService.invoiceNumber())
                 .userId(user.getId())
                 .subscriptionId(subscription.getId())
                 // Denormalized fields
@@ -112,10 +148,120 @@ public class InvoiceService {
 
         invoice = invoiceRepository.save(invoice);
         log.info("Plan change invoice generated: {}", invoice.getInvoiceNumber());
+        invoicePdfService.renderAsync(invoice);
 
         return invoice;
     }
 
+    /**
+     * Build (without saving) a metered usage invoice for a closed billing period.
+     */
+    public Invoice buildUsageInvoice(Subscription subscription, User user, Plan plan, LocalDateTime periodStart,
+            LocalDateTime periodEnd, List<InvoiceLineItem> lineItems) {
+        BigDecimal amount = lineItems.stream()
+                .map(InvoiceLineItem::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal taxAmount = amount.multiply(TAX_RATE);
+        BigDecimal totalAmount = amount.add(taxAmount);
+
+        return Invoice.builder()
+                .invoiceNumber(idGenerationService.invoiceNumber())
+                .userId(subscription.getUserId())
+                .subscriptionId(subscription.getId())
+                // Denormalized fields
+                .userEmail(user != null ? user.getEmail() : subscription.getUserEmail())
+                .userName(user != null ? user.getFullName() : null)
+                .planName(plan.getName())
+                .amount(amount)
+                .taxAmount(taxAmount)
+                .discountAmount(BigDecimal.ZERO)
+                .totalAmount(totalAmount)
+                .currency(plan.getCurrency())
+                .status(InvoiceStatus.PENDING)
+                .invoiceDate(LocalDate.now())
+                .dueDate(LocalDate.now().plusDays(14))
+                .billingPeriodStart(periodStart.toLocalDate())
+                .billingPeriodEnd(periodEnd.toLocalDate())
+                .lineItems(lineItems)
+                .notes("Metered usage charges for " + plan.getName())
+                .billingKey(billingKey(subscription, "usage", periodStart))
+                .build();
+    }
+
+    /**
+     * Key identifying the invoice for one billing event of a subscription period.
+     */
+    public String billingKey(Subscription subscription, String kind, LocalDateTime periodStart) {
+        return subscription.getId() + ":" + kind + ":" + periodStart;
+    }
+
+    /**
+     * Insert new invoices with one unordered bulk write.
+     * Invoices whose billing key already exists were created by an earlier
+     * attempt of the same billing event and are skipped.
+     *
+     * @return the invoices actually inserted
+     */
+    public List<Invoice> insertNewInvoices(List<Invoice> invoices) {
+        if (invoices.isEmpty()) {
+            return invoices;
+        }
+
+        Set<Integer> duplicates = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Invoice.class)
+                    .insert(invoices)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                    throw e;
+                }
+                duplicates.add(error.getIndex());
+            }
+            log.info("Skipped {} invoices already created for their billing event", duplicates.size());
+        }
+
+        List<Invoice> inserted = new ArrayList<>(invoices.size() - duplicates.size());
+        for (int i = 0; i < invoices.size(); i++) {
+            if (!duplicates.contains(i)) {
+                inserted.add(invoices.get(i));
+            }
+        }
+        invoicePdfService.renderAll(inserted);
+        return inserted;
+    }
+
+    /**
+     * Ensure the unique billing key index guarding against double billing
+     * and the indexes backing the overdue job and the missing-PDF sweep exist.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        try {
+            IndexOperations indexOps = mongoTemplate.indexOps(Invoice.class);
+            indexOps.ensureIndex(new Index()
+                    .named("billingKey")
+                    .on("billingKey", Sort.Direction.ASC)
+                    .unique()
+                    .sparse());
+            indexOps.ensureIndex(new Index()
+                    .named("status_due_idx")
+                    .on("status", Sort.Direction.ASC)
+                    .on("dueDate", Sort.Direction.ASC));
+            indexOps.ensureIndex(new Index()
+                    .named("status_dunning_idx")
+                    .on("status", Sort.Direction.ASC)
+                    .on("dunningSentAt", Sort.Direction.ASC));
+            indexOps.ensureIndex(new Index()
+                    .named("pdf_missing_idx")
+                    .on("pdfUrl", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.ASC));
+        } catch (Exception e) {
+            log.warn("Failed to ensure invoice indexes: {}", e.getMessage());
+        }
+    }
+
     /**
      * Get invoice by ID.
      */
@@ -162,6 +308,14 @@ public class InvoiceService {
         return dtoMapper.toPageResponse(page);
     }
 
+    /**
+     * Get all invoices with cursor pagination.
+     */
+    public CursorPageResponse<InvoiceResponse> getAllInvoices(String cursor, int size) {
+        return cursorPager.page(Invoice.class, null, "createdAt",
+                Invoice::getCreatedAt, Invoice::getId, cursor, size, dtoMapper::toInvoiceResponse);
+    }
+
     /**
      * Get invoices by status.
      */
@@ -210,28 +364,66 @@ public class InvoiceService {
     }
 
     /**
-     * Get overdue invoices and mark them.
+     * Mark overdue invoices on a schedule and send dunning notices.
      */
-    public List<Invoice> processOverdueInvoices() {
-        List<Invoice> overdueInvoices = invoiceRepository.findByStatusAndDueDateBefore(
-                InvoiceStatus.PENDING, LocalDate.now());
-
-        for (Invoice invoice : overdueInvoices) {
-            invoice.setStatus(InvoiceStatus.OVERDUE);
-            invoiceRepository.save(invoice);
-            log.info("Invoice marked as overdue: {}", invoice.getInvoiceNumber());
-        }
+    @Scheduled(cron = "${billing.overdue.cron:0 15 0 * * *}")
+    public void scheduledOverdueRun() {
+        processOverdueInvoices();
+    }
 
-        return overdueInvoices;
+    /**
+     * Mark pending invoices past their due date as overdue and send dunning notices.
+     *
+     * @return number of invoices marked overdue
+     */
+    public long processOverdueInvoices() {
+        return markOverdueInvoices(LocalDate.now(), dunningService::sendOverdueNotices);
     }
 
     /**
-     * Generate unique invoice number.
+     * Flip every pending invoice due before the given date to OVERDUE with one
+     * server-side update, then stream the overdue invoices not yet dunned to
+     * the sender in batches. The sender returns the ids it delivered and only
+     * those are stamped with dunningSentAt, so invoices left over by a failed
+     * send or an interrupted run are picked up by the next run.
+     *
+     * @return number of invoices marked overdue
      */
-    private String generateInvoiceNumber() {
-        String prefix = "INV-" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMM")) + "-";
-        // For MongoDB, use a UUID suffix to ensure uniqueness
-        return prefix + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    public long markOverdueInvoices(LocalDate dueBefore, Function<List<String>, List<String>> batchSender) {
+        LocalDateTime markedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        UpdateResult result = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("status").is(InvoiceStatus.PENDING).and("dueDate").lt(dueBefore)),
+                Update.update("status", InvoiceStatus.OVERDUE).set("overdueAt", markedAt),
+                Invoice.class);
+        long marked = result.getModifiedCount();
+
+        // Invoices flipped before overdueAt existed predate dunning and are not notified
+        Query undunned = Query.query(Criteria.where("status").is(InvoiceStatus.OVERDUE)
+                .and("dunningSentAt").is(null)
+                .and("overdueAt").exists(true));
+        undunned.fields().include("_id");
+        undunned.cursorBatchSize(overdueBatchSize);
+
+        long streamed = 0;
+        List<String> batch = new ArrayList<>(overdueBatchSize);
+        try (Stream<Invoice> invoices = mongoTemplate.stream(undunned, Invoice.class)) {
+            Iterator<Invoice> iterator = invoices.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next().getId());
+                if (batch.size() == overdueBatchSize || !iterator.hasNext()) {
+                    List<String> sent = batchSender.apply(batch);
+                    if (!sent.isEmpty()) {
+                        mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(sent)),
+                                Update.update("dunningSentAt", LocalDateTime.now()), Invoice.class);
+                    }
+                    streamed += sent.size();
+                    batch = new ArrayList<>(overdueBatchSize);
+                }
+            }
+        }
+
+        log.info("Marked {} invoices overdue, {} dunned", marked, streamed);
+        return marked;
     }
 
     /**
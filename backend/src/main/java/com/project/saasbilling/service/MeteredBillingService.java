@@ -0,0 +1,228 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.*;
+import com.project.saasbilling.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Metered billing stage run when subscription billing periods close.
+ * Closing subscriptions are split into partitions that are billed in
+ * parallel; each partition sums its usage with a single aggregation over the
+ * usage rollups, prices overage against plan limits and bulk-inserts the
+ * resulting usage invoices.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MeteredBillingService {
+
+    private static final Date NEVER_BILLED = new Date(0);
+
+    private final UsageRollupService usageRollupService;
+    private final InvoiceService invoiceService;
+    private final EmailService emailService;
+    private final PlanCatalog planCatalog;
+    private final MetricQuotaMapping metricQuotaMapping;
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${billing.metered.partition-size:500}")
+    private int partitionSize;
+
+    @Value("${billing.metered.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    /**
+     * A subscription billing period that has closed.
+     */
+    public record PeriodClose(Subscription subscription, LocalDateTime periodStart, LocalDateTime periodEnd) {
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "metered-billing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Bill metered usage for every subscription whose period ended at or before the given time
+     * and has not been billed yet, and for periods replaced by a renewal that are still unbilled.
+     *
+     * @return number of usage invoices created
+     */
+    public int closeEndedPeriods(LocalDateTime closedBefore) {
+        Query query = Query.query(Criteria.where("endDate").lte(closedBefore)
+                .andOperator(Criteria.expr(ComparisonOperators.Lt
+                        .valueOf(ConditionalOperators.ifNull("meteredBilledThrough").then(NEVER_BILLED))
+                        .lessThan("endDate"))));
+        List<PeriodClose> closes = new ArrayList<>(mongoTemplate.find(query, Subscription.class).stream()
+                .filter(subscription -> subscription.getStartDate() != null)
+                .map(subscription -> new PeriodClose(subscription, subscription.getStartDate(),
+                        subscription.getEndDate()))
+                .toList());
+        mongoTemplate.find(Query.query(Criteria.where("meteredPendingEnd").exists(true)), Subscription.class)
+                .forEach(subscription -> closes.add(new PeriodClose(subscription,
+                        subscription.getMeteredPendingStart(), subscription.getMeteredPendingEnd())));
+        return billPeriods(closes);
+    }
+
+    /**
+     * Bill metered usage for a batch of closed periods in parallel partitions.
+     *
+     * @return number of usage invoices created
+     */
+    public int billPeriods(List<PeriodClose> closes) {
+        if (closes.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<Integer>> partitions = new ArrayList<>();
+        for (int from = 0; from < closes.size(); from += partitionSize) {
+            List<PeriodClose> partition = closes.subList(from, Math.min(from + partitionSize, closes.size()));
+            partitions.add(CompletableFuture.supplyAsync(() -> billPartition(partition), executor));
+        }
+
+        int invoices = 0;
+        for (CompletableFuture<Integer> partition : partitions) {
+            try {
+                invoices += partition.join();
+            } catch (Exception e) {
+                // Unbilled subscriptions in a failed partition are picked up by the next run
+                log.error("Metered billing partition failed: {}", e.getMessage(), e);
+            }
+        }
+
+        log.info("Metered billing closed {} periods in {} partitions, {} usage invoices created",
+                closes.size(), partitions.size(), invoices);
+        return invoices;
+    }
+
+    /**
+     * Bill one partition of closed periods in the calling thread.
+     *
+     * @return number of usage invoices created
+     */
+    public int billPartition(List<PeriodClose> closes) {
+        Map<String, Map<String, Long>> usage = usageRollupService.summarizePeriods(closes.stream()
+                .map(close -> new UsageRollupService.SubscriptionPeriod(close.subscription().getId(),
+                        close.periodStart(), close.periodEnd()))
+                .toList());
+
+        Set<String> planIds = closes.stream()
+                .map(close -> close.subscription().getPlanId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, Plan> plans = planCatalog.findAllById(planIds);
+
+        Set<String> userIds = closes.stream()
+                .map(close -> close.subscription().getUserId())
+                .collect(Collectors.toSet());
+        Map<String, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Invoice> invoices = new ArrayList<>();
+        for (PeriodClose close : closes) {
+            Subscription subscription = close.subscription();
+            Plan plan = plans.get(subscription.getPlanId());
+            if (plan == null) {
+                continue;
+            }
+
+            List<InvoiceLineItem> lineItems = priceOverage(plan,
+                    usage.getOrDefault(subscription.getId(), Collections.emptyMap()));
+            if (!lineItems.isEmpty()) {
+                invoices.add(invoiceService.buildUsageInvoice(subscription, users.get(subscription.getUserId()),
+                        plan, close.periodStart(), close.periodEnd(), lineItems));
+            }
+        }
+
+        invoices = invoiceService.insertNewInvoices(invoices);
+
+        BulkOperations markers = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Subscription.class);
+        for (PeriodClose close : closes) {
+            Criteria billed = Criteria.where("_id").is(close.subscription().getId());
+            if (close.periodEnd().equals(close.subscription().getMeteredPendingEnd())) {
+                // A period replaced by a renewal; the current period is still open
+                markers.updateOne(Query.query(billed.and("meteredPendingEnd").is(close.periodEnd())),
+                        new Update().unset("meteredPendingStart").unset("meteredPendingEnd").inc("version", 1));
+            } else {
+                markers.updateOne(Query.query(billed),
+                        Update.update("meteredBilledThrough", close.periodEnd()).inc("version", 1));
+            }
+        }
+        markers.execute();
+
+        for (Invoice invoice : invoices) {
+            User user = users.get(invoice.getUserId());
+            if (user != null) {
+                emailService.sendInvoiceEmail(user, invoice);
+            }
+        }
+        return invoices.size();
+    }
+
+    /**
+     * Price usage beyond each plan limit; one line item per quota with billable overage.
+     */
+    private List<InvoiceLineItem> priceOverage(Plan plan, Map<String, Long> usageByMetric) {
+        Map<QuotaType, Long> usageByQuota = new EnumMap<>(QuotaType.class);
+        usageByMetric.forEach((metric, total) ->
+                usageByQuota.merge(metricQuotaMapping.quotaFor(metric), total, Long::sum));
+
+        List<InvoiceLineItem> lineItems = new ArrayList<>();
+        for (Map.Entry<QuotaType, Long> entry : usageByQuota.entrySet()) {
+            QuotaType type = entry.getKey();
+            Long limit = type.limitOf(plan);
+            BigDecimal unitPrice = type.overagePriceOf(plan);
+            long used = entry.getValue();
+            if (limit == null || unitPrice == null || unitPrice.signum() == 0 || used <= limit) {
+                continue;
+            }
+
+            long billable = used - limit;
+            lineItems.add(InvoiceLineItem.builder()
+                    .description(type.name().replace('_', ' ').toLowerCase() + " overage")
+                    .quotaType(type)
+                    .quantity(used)
+                    .includedQuantity(limit)
+                    .billableQuantity(billable)
+                    .unitPrice(unitPrice)
+                    .amount(unitPrice.multiply(BigDecimal.valueOf(billable)))
+                    .build());
+        }
+        return lineItems;
+    }
+}
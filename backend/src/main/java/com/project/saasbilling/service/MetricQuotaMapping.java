@@ -0,0 +1,47 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.QuotaType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Configured mapping from usage metric names to the plan quota they count
+ * against and are billed under. Metrics that are not listed count against USAGE.
+ */
+@Service
+public class MetricQuotaMapping {
+
+    private final Map<String, QuotaType> quotas = new HashMap<>();
+
+    public MetricQuotaMapping(
+            @Value("${usage.quota.metrics.api-calls:api_calls}") List<String> apiCallMetrics,
+            @Value("${usage.quota.metrics.storage:storage,storage_mb}") List<String> storageMetrics) {
+        apiCallMetrics.forEach(metric -> register(metric, QuotaType.API_CALLS));
+        storageMetrics.forEach(metric -> register(metric, QuotaType.STORAGE));
+    }
+
+    /**
+     * Resolve the quota a metric counts against.
+     */
+    public QuotaType quotaFor(String metricName) {
+        return metricName != null
+                ? quotas.getOrDefault(metricName.toLowerCase(Locale.ROOT), QuotaType.USAGE)
+                : QuotaType.USAGE;
+    }
+
+    private void register(String metric, QuotaType type) {
+        String name = metric.trim().toLowerCase(Locale.ROOT);
+        if (name.isEmpty()) {
+            return;
+        }
+        QuotaType previous = quotas.putIfAbsent(name, type);
+        if (previous != null && previous != type) {
+            throw new IllegalStateException("Metric " + name + " is mapped to both " + previous + " and " + type);
+        }
+    }
+}
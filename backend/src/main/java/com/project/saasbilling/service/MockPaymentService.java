@@ -5,17 +5,13 @@ import com.project.saasbilling.exception.BadRequestException;
 import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.*;
 import com.project.saasbilling.repository.PaymentOrderRepository;
-import com.project.saasbilling.repository.PlanRepository;
 import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.HmacSha256;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.UUID;
 
 /**
  * Mock payment service simulating Razorpay-like payment processing.
@@ -27,12 +23,14 @@ import java.util.UUID;
 public class MockPaymentService {
 
     private final PaymentOrderRepository paymentOrderRepository;
-    private final PlanRepository planRepository;
+    private final PlanCatalog planCatalog;
     private final UserRepository userRepository;
+    private final IdGenerationService idGenerationService;
 
     // Mock Razorpay key (for demo purposes)
     private static final String MOCK_KEY_ID = "rzp_test_mock_key_123";
     private static final String MOCK_KEY_SECRET = "mock_secret_key_456";
+    private static final HmacSha256 MOCK_SIGNER = new HmacSha256(MOCK_KEY_SECRET);
 
     /**
      * Initiate a payment order for a plan subscription.
@@ -45,7 +43,7 @@ public class MockPaymentService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
 
-        Plan plan = planRepository.findById(request.getPlanId())
+        Plan plan = planCatalog.findById(request.getPlanId())
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", request.getPlanId()));
 
         if (!plan.getActive()) {
@@ -66,7 +64,7 @@ public class MockPaymentService {
         }
 
         // Create payment order
-        String razorpayOrderId = generateOrderId();
+        String razorpayOrderId = idGenerationService.orderId();
 
         PaymentOrder order = PaymentOrder.builder()
                 .userId(userId)
@@ -95,7 +93,7 @@ public class MockPaymentService {
 
     /**
      * Verify a completed payment (mock verification).
-     * In real Razorpay, this would verify the signature using HMAC-SHA256.
+     * The signature is the hex HMAC-SHA256 of "orderId|paymentId" keyed with the key secret.
      */
     public PaymentOrderResponse verifyPayment(PaymentVerifyRequest request) {
         log.info("Verifying payment for order: {}", request.getOrderId());
@@ -107,7 +105,7 @@ public class MockPaymentService {
             return buildResponse(order, true, "Payment already verified");
         }
 
-        // Mock signature verification (in production, use HMAC-SHA256)
+        // HMAC-SHA256 signature verification
         boolean isValid = verifySignature(request.getOrderId(), request.getPaymentId(), request.getSignature());
 
         if (!isValid) {
@@ -156,29 +154,13 @@ public class MockPaymentService {
                 .orElseThrow(() -> new ResourceNotFoundException("PaymentOrder", "orderId", orderId));
     }
 
-    // Generate a mock order ID (similar to Razorpay format)
-    private String generateOrderId() {
-        return "order_" + UUID.randomUUID().toString().replace("-", "").substring(0, 14);
-    }
-
-    // Mock signature verification
-    // In real implementation, this would use HMAC-SHA256 with the secret key
+    // Razorpay checkout signature: hex HMAC-SHA256 of "orderId|paymentId" with the key secret
     private boolean verifySignature(String orderId, String paymentId, String signature) {
-        // For mock purposes, we accept any signature that matches a simple pattern
-        // Real implementation: signature = HMAC-SHA256(orderId + "|" + paymentId,
-        // secret_key)
-        try {
-            String expectedData = orderId + "|" + paymentId;
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest((expectedData + MOCK_KEY_SECRET).getBytes());
-            String expectedSignature = Base64.getEncoder().encodeToString(hash).substring(0, 32);
-
-            // For demo: accept the signature if it matches OR if it's "mock_signature"
-            return signature.equals(expectedSignature) || signature.startsWith("mock_sig_");
-        } catch (NoSuchAlgorithmException e) {
-            log.error("Error generating signature", e);
-            return signature.startsWith("mock_sig_"); // Fallback for demo
+        if (signature == null) {
+            return false;
         }
+        // For demo: the mock checkout in the frontend sends "mock_sig_" signatures
+        return signature.startsWith("mock_sig_") || MOCK_SIGNER.verifyHex(signature, orderId, paymentId);
     }
 
     private PaymentOrderResponse buildResponse(PaymentOrder order, boolean verified, String message) {
@@ -0,0 +1,300 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.*;
+import com.project.saasbilling.repository.InvoiceRepository;
+import com.project.saasbilling.repository.PaymentLogRepository;
+import com.project.saasbilling.repository.SubscriptionRepository;
+import com.project.saasbilling.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox relay.
+ * Claims batches of pending outbox events, delivers them to their handlers
+ * on a worker pool and records the outcomes with one bulk write. Delivery is
+ * at least once: an event is only marked delivered after its handler
+ * returns, failed events are retried with exponential backoff and claims of a
+ * crashed node are released after a timeout, so handlers are idempotent or
+ * tolerate repeats. Lag is exported as the age of the oldest undelivered event.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    private static final long MAX_BACKOFF_SECONDS = 300;
+
+    private final MongoTemplate mongoTemplate;
+    private final SubscriptionRepository subscriptionRepository;
+    private final PaymentLogRepository paymentLogRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final UserRepository userRepository;
+    private final PlanCatalog planCatalog;
+    private final InvoiceService invoiceService;
+    private final EmailService emailService;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    @Value("${outbox.relay.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.relay.workers:4}")
+    private int workers;
+
+    @Value("${outbox.relay.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${outbox.relay.stale-after-seconds:120}")
+    private long staleAfterSeconds;
+
+    // How long an event may wait for its document before it is treated as orphaned
+    @Value("${outbox.relay.orphan-after-seconds:300}")
+    private long orphanAfterSeconds;
+
+    private ExecutorService executor;
+
+    public OutboxRelay(MongoTemplate mongoTemplate, SubscriptionRepository subscriptionRepository,
+            PaymentLogRepository paymentLogRepository, InvoiceRepository invoiceRepository,
+            UserRepository userRepository, PlanCatalog planCatalog, InvoiceService invoiceService,
+            EmailService emailService, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.subscriptionRepository = subscriptionRepository;
+        this.paymentLogRepository = paymentLogRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.userRepository = userRepository;
+        this.planCatalog = planCatalog;
+        this.invoiceService = invoiceService;
+        this.emailService = emailService;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest undelivered outbox event")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Drain the outbox until no batch is left, then refresh the lag metric.
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:500}")
+    public void relay() {
+        releaseStaleClaims();
+        List<OutboxEvent> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } while (batch.size() == batchSize);
+        updateLag();
+    }
+
+    /**
+     * Claim up to one batch of due events for this relay. The conditional
+     * update only takes events still pending, so concurrent relays never
+     * claim the same event.
+     */
+    private List<OutboxEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = Query.query(Criteria.where("status").is(OutboxStatus.PENDING).and("availableAt").lte(now))
+                .with(Sort.by(Sort.Order.asc("createdAt")))
+                .limit(batchSize);
+        due.fields().include("_id");
+        List<String> ids = mongoTemplate.find(due, OutboxEvent.class).stream()
+                .map(OutboxEvent::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String token = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(ids).and("status").is(OutboxStatus.PENDING)),
+                new Update()
+                        .set("status", OutboxStatus.PROCESSING)
+                        .set("claimToken", token)
+                        .set("claimedAt", now)
+                        .inc("attempts", 1),
+                OutboxEvent.class);
+        return mongoTemplate.find(Query.query(Criteria.where("claimToken").is(token)), OutboxEvent.class);
+    }
+
+    private void deliver(List<OutboxEvent> batch) {
+        List<CompletableFuture<Outcome>> deliveries = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            deliveries.add(CompletableFuture.supplyAsync(() -> handle(event), executor)
+                    .exceptionally(e -> {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        log.warn("Outbox event {} ({}) failed: {}", event.getId(), event.getType(),
+                                cause.getMessage());
+                        return Outcome.failed(cause.getMessage());
+                    }));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations results = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxEvent.class);
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            Outcome outcome = deliveries.get(i).join();
+            OutboxStatus status = resolveStatus(event, outcome, now);
+
+            Update update = new Update().set("status", status).set("lastError", outcome.error()).unset("claimToken");
+            if (status == OutboxStatus.PENDING) {
+                update.set("availableAt", now.plusSeconds(backoffSeconds(event.getAttempts())));
+            } else {
+                update.set("processedAt", now);
+            }
+            results.updateOne(Query.query(Criteria.where("_id").is(event.getId())), update);
+            meterRegistry.counter("outbox.events", "type", event.getType().name(),
+                    "result", status.name().toLowerCase()).increment();
+        }
+        results.execute();
+    }
+
+    private OutboxStatus resolveStatus(OutboxEvent event, Outcome outcome, LocalDateTime now) {
+        if (outcome.delivered()) {
+            return OutboxStatus.DELIVERED;
+        }
+        if (outcome.error() == null) {
+            // The document never reached the expected state: the operation that enqueued the event failed
+            boolean orphaned = event.getCreatedAt().isBefore(now.minusSeconds(orphanAfterSeconds));
+            return orphaned ? OutboxStatus.DISCARDED : OutboxStatus.PENDING;
+        }
+        if (event.getAttempts() >= maxAttempts) {
+            log.error("Outbox event {} ({}) failed after {} attempts: {}", event.getId(), event.getType(),
+                    event.getAttempts(), outcome.error());
+            return OutboxStatus.FAILED;
+        }
+        return OutboxStatus.PENDING;
+    }
+
+    /**
+     * Deliver one event. Returns not ready while the document it belongs to
+     * has not been written yet.
+     */
+    private Outcome handle(OutboxEvent event) {
+        return switch (event.getType()) {
+            case SUBSCRIPTION_INVOICE -> sendSubscriptionInvoice(event.getAggregateId());
+            case SUBSCRIPTION_CREATED_EMAIL -> sendSubscriptionCreatedEmail(event.getAggregateId());
+            case PAYMENT_CONFIRMATION_EMAIL -> sendPaymentConfirmationEmail(event.getAggregateId());
+        };
+    }
+
+    private Outcome sendSubscriptionInvoice(String subscriptionId) {
+        Subscription subscription = subscriptionRepository.findById(subscriptionId).orElse(null);
+        if (subscription == null) {
+            return Outcome.NOT_READY;
+        }
+        User user = userRepository.findById(subscription.getUserId()).orElse(null);
+        Plan plan = planCatalog.findById(subscription.getPlanId()).orElse(null);
+        if (user == null || plan == null) {
+            return Outcome.failed("User or plan of subscription " + subscriptionId + " not found");
+        }
+
+        // The billing key makes a redelivered event find the invoice created by the first delivery
+        Invoice invoice = invoiceService.buildInvoice(subscription, user, plan, subscription.getStartDate(),
+                subscription.getEndDate());
+        invoice.setBillingKey(invoiceService.billingKey(subscription, "initial", subscription.getStartDate()));
+        for (Invoice inserted : invoiceService.insertNewInvoices(List.of(invoice))) {
+            log.info("Invoice {} generated for subscription: {}", inserted.getInvoiceNumber(), subscriptionId);
+            emailService.sendInvoiceEmail(user, inserted);
+        }
+        return Outcome.DELIVERED;
+    }
+
+    private Outcome sendSubscriptionCreatedEmail(String subscriptionId) {
+        Subscription subscription = subscriptionRepository.findById(subscriptionId).orElse(null);
+        if (subscription == null) {
+            return Outcome.NOT_READY;
+        }
+        userRepository.findById(subscription.getUserId())
+                .ifPresent(user -> emailService.sendSubscriptionCreatedEmail(user, subscription));
+        return Outcome.DELIVERED;
+    }
+
+    private Outcome sendPaymentConfirmationEmail(String paymentId) {
+        PaymentLog payment = paymentLogRepository.findById(paymentId).orElse(null);
+        if (payment == null || payment.getStatus() != PaymentStatus.SUCCESS) {
+            return Outcome.NOT_READY;
+        }
+        Invoice invoice = invoiceRepository.findById(payment.getInvoiceId()).orElse(null);
+        User user = userRepository.findById(payment.getUserId()).orElse(null);
+        if (invoice != null && user != null) {
+            emailService.sendPaymentConfirmationEmail(user, payment, invoice);
+        }
+        return Outcome.DELIVERED;
+    }
+
+    /**
+     * Return events claimed by a relay that stopped before recording their outcome.
+     */
+    private void releaseStaleClaims() {
+        long released = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("status").is(OutboxStatus.PROCESSING)
+                        .and("claimedAt").lt(LocalDateTime.now().minusSeconds(staleAfterSeconds))),
+                new Update().set("status", OutboxStatus.PENDING).unset("claimToken"),
+                OutboxEvent.class).getModifiedCount();
+        if (released > 0) {
+            log.warn("Released {} outbox events from a stalled relay", released);
+        }
+    }
+
+    private void updateLag() {
+        Query oldest = Query.query(Criteria.where("status").in(OutboxStatus.PENDING, OutboxStatus.PROCESSING))
+                .with(Sort.by(Sort.Order.asc("createdAt")))
+                .limit(1);
+        oldest.fields().include("createdAt");
+        OutboxEvent event = mongoTemplate.findOne(oldest, OutboxEvent.class);
+        lagMillis.set(event == null ? 0 : Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis());
+    }
+
+    private static long backoffSeconds(int attempts) {
+        return Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts, 20));
+    }
+
+    private record Outcome(boolean delivered, String error) {
+
+        private static final Outcome DELIVERED = new Outcome(true, null);
+        private static final Outcome NOT_READY = new Outcome(false, null);
+
+        private static Outcome failed(String error) {
+            return new Outcome(false, error != null ? error : "Delivery failed");
+        }
+    }
+}
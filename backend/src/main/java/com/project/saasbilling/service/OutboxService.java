@@ -0,0 +1,40 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.OutboxEvent;
+import com.project.saasbilling.model.OutboxEventType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write side of the transactional outbox.
+ * Without multi-document transactions, callers enqueue side effects before
+ * writing the document they belong to; the relay delivers them once that
+ * document is in the expected state.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Enqueue side effects of one aggregate with a single insert.
+     */
+    public void enqueue(String aggregateId, OutboxEventType... types) {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = Arrays.stream(types)
+                .map(type -> OutboxEvent.builder()
+                        .type(type)
+                        .aggregateId(aggregateId)
+                        .createdAt(now)
+                        .availableAt(now)
+                        .build())
+                .toList();
+        mongoTemplate.insertAll(events);
+    }
+}
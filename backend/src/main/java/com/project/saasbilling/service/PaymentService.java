@@ -1,26 +1,45 @@
 package com.project.saasbilling.service;
 
+import com.project.saasbilling.dto.CursorPageResponse;
 import com.project.saasbilling.dto.PageResponse;
 import com.project.saasbilling.dto.PaymentRequest;
 import com.project.saasbilling.dto.PaymentResponse;
 import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.exception.ConflictException;
+import com.project.saasbilling.exception.GatewayUnavailableException;
 import com.project.saasbilling.exception.PaymentException;
 import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.*;
 import com.project.saasbilling.repository.InvoiceRepository;
 import com.project.saasbilling.repository.PaymentLogRepository;
-import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.CursorPager;
 import com.project.saasbilling.util.DtoMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -34,10 +53,67 @@ public class PaymentService {
 
     private final PaymentLogRepository paymentLogRepository;
     private final InvoiceRepository invoiceRepository;
-    private final UserRepository userRepository;
     private final RazorpayService razorpayService;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
+    private final IdGenerationService idGenerationService;
     private final DtoMapper dtoMapper;
+    private final CursorPager cursorPager;
+    private final MongoTemplate mongoTemplate;
+
+    // Payments still PENDING after this long have lost their worker or their gateway response
+    @Value("${payment.recovery.pending-after-ms:300000}")
+    private long recoverAfterMillis;
+
+    @Value("${payment.recovery.batch-size:100}")
+    private int recoveryBatchSize;
+
+    // How long an async payment waits for gateway capacity; below the recovery delay so recovery rarely races it
+    @Value("${payment.async.max-wait-ms:60000}")
+    private long asyncMaxWaitMillis;
+
+    @Value("${payment.async.shutdown-wait-ms:10000}")
+    private long shutdownWaitMillis;
+
+    private ExecutorService asyncExecutor;
+
+    @PostConstruct
+    public void init() {
+        ensureIndexes();
+        // Gateway calls mostly wait on I/O, so a virtual thread per payment is cheap
+        asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Ensure the partial unique index allowing one PENDING payment per invoice exists.
+     * The index is what stops two concurrent payments from charging the same invoice,
+     * so startup fails if it cannot be built, e.g. because existing data already holds duplicates.
+     */
+    private void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(PaymentLog.class).ensureIndex(new Index()
+                    .named("invoice_pending_unique_idx")
+                    .on("invoiceId", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("status").is(PaymentStatus.PENDING.name()))));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to ensure invoice_pending_unique_idx; resolve invoices with more"
+                    + " than one PENDING payment before starting: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        asyncExecutor.shutdown();
+        try {
+            // Let payments already at the gateway record their outcome; the rest are recovered later
+            if (!asyncExecutor.awaitTermination(shutdownWaitMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Stopped with async payments in flight; they are recovered once PENDING for {} ms",
+                        recoverAfterMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     /**
      * Process a payment for an invoice.
@@ -45,6 +121,67 @@ public class PaymentService {
     public PaymentResponse processPayment(String userId, PaymentRequest request, String ipAddress) {
         log.info("Processing payment for invoice: {} by user: {}", request.getInvoiceId(), userId);
 
+        Invoice invoice = findPayableInvoice(userId, request);
+        PaymentLog payment = createPendingPayment(userId, invoice, request);
+
+        try {
+            RazorpayService.PaymentResult result = razorpayService.processPayment(
+                    payment.getTransactionId(),
+                    payment.getAmount(),
+                    payment.getCurrency());
+            payment = completePayment(payment, result);
+        } catch (GatewayUnavailableException e) {
+            // A timed-out charge may still go through, so the payment stays PENDING until recovery
+            // settles it from the gateway; new payments for the invoice are refused until then
+            log.warn("Payment {} left pending: {}", payment.getTransactionId(), e.getMessage());
+            throw new GatewayUnavailableException("Payment " + payment.getId()
+                    + " could not be confirmed with the payment gateway and is pending; check its status"
+                    + " before paying again");
+        } catch (Exception e) {
+            resolve(payment, PaymentStatus.FAILED, null, e.getMessage());
+
+            log.error("Payment processing error: {}", e.getMessage());
+            throw new PaymentException("Payment processing failed: " + e.getMessage());
+        }
+
+        return dtoMapper.toPaymentResponse(payment);
+    }
+
+    /**
+     * Accept a payment for an invoice and process it off the request thread.
+     * Returns the PENDING payment; its status changes once the gateway responds.
+     */
+    public PaymentResponse acceptPayment(String userId, PaymentRequest request, String ipAddress) {
+        log.info("Accepting payment for invoice: {} by user: {}", request.getInvoiceId(), userId);
+
+        Invoice invoice = findPayableInvoice(userId, request);
+        PaymentLog payment = createPendingPayment(userId, invoice, request);
+        PaymentResponse accepted = dtoMapper.toPaymentResponse(payment);
+
+        asyncExecutor.execute(() -> {
+            try {
+                RazorpayService.PaymentResult result = razorpayService.processPayment(
+                        payment.getTransactionId(),
+                        payment.getAmount(),
+                        payment.getCurrency(),
+                        asyncMaxWaitMillis);
+                completePayment(payment, result);
+            } catch (GatewayUnavailableException e) {
+                // Not a decline: stays PENDING and is settled from the gateway by recovery
+                log.warn("Async payment {} left pending: {}", payment.getTransactionId(), e.getMessage());
+            } catch (Exception e) {
+                resolve(payment, PaymentStatus.FAILED, null, e.getMessage());
+                log.error("Async payment processing error for {}: {}", payment.getTransactionId(), e.getMessage());
+            }
+        });
+
+        return accepted;
+    }
+
+    /**
+     * Load the invoice being paid and check it can be paid with this request.
+     */
+    private Invoice findPayableInvoice(String userId, PaymentRequest request) {
         Invoice invoice = invoiceRepository.findById(request.getInvoiceId())
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", request.getInvoiceId()));
 
@@ -65,6 +202,18 @@ public class PaymentService {
             throw new BadRequestException("Payment amount does not match invoice total");
         }
 
+        // A pending payment may still be charged, so a second one could charge the customer twice.
+        // This only gives an early answer; invoice_pending_unique_idx enforces it for concurrent requests
+        if (paymentLogRepository.existsByInvoiceIdAndStatus(invoice.getId(), PaymentStatus.PENDING)) {
+            throw new ConflictException("A payment for this invoice is still being processed");
+        }
+        return invoice;
+    }
+
+    /**
+     * Persist a PENDING payment log for the invoice.
+     */
+    private PaymentLog createPendingPayment(String userId, Invoice invoice, PaymentRequest request) {
         // Create payment log with denormalized data
         PaymentLog payment = PaymentLog.builder()
                 .userId(userId)
@@ -72,7 +221,7 @@ public class PaymentService {
                 // Denormalized fields
                 .userEmail(invoice.getUserEmail())
                 .invoiceNumber(invoice.getInvoiceNumber())
-                .transactionId(generateTransactionId())
+                .transactionId(idGenerationService.transactionId())
                 .amount(request.getAmount())
                 .currency(request.getCurrency() != null ? request.getCurrency() : invoice.getCurrency())
                 .status(PaymentStatus.PENDING)
@@ -80,50 +229,112 @@ public class PaymentService {
                 .paymentGateway("razorpay")
                 .build();
 
-        payment = paymentLogRepository.save(payment);
-
         try {
-            // Process payment through Razorpay (mock)
-            RazorpayService.PaymentResult result = razorpayService.processPayment(
-                    payment.getTransactionId(),
-                    request.getAmount(),
-                    payment.getCurrency());
-
-            if (result.isSuccess()) {
-                payment.setStatus(PaymentStatus.SUCCESS);
-                payment.setExternalPaymentId(result.getPaymentId());
-                payment.setProcessedAt(LocalDateTime.now());
-
-                // Update invoice status
-                invoice.setStatus(InvoiceStatus.PAID);
-                invoice.setPaidDate(LocalDate.now());
-                invoiceRepository.save(invoice);
+            return paymentLogRepository.save(payment);
+        } catch (DuplicateKeyException e) {
+            throw new ConflictException("A payment for this invoice is still being processed");
+        }
+    }
 
+    /**
+     * Record the gateway's answer for a pending payment, marking the invoice
+     * paid and queueing the confirmation email on success. Goes through the
+     * same conditional update as recovery, so whichever settles the payment
+     * first wins and the other leaves it alone.
+     */
+    private PaymentLog completePayment(PaymentLog payment, RazorpayService.PaymentResult result) {
+        if (result.isSuccess()) {
+            // Delivered by the outbox relay once the payment is stored as SUCCESS
+            outboxService.enqueue(payment.getId(), OutboxEventType.PAYMENT_CONFIRMATION_EMAIL);
+            if (resolve(payment, PaymentStatus.SUCCESS, result.getPaymentId(), null)) {
+                invoiceRepository.findById(payment.getInvoiceId()).ifPresent(this::markInvoicePaid);
                 log.info("Payment successful: {}", payment.getTransactionId());
+            }
+        } else if (resolve(payment, PaymentStatus.FAILED, null, result.getErrorMessage())) {
+            log.error("Payment failed: {} - {}", payment.getTransactionId(), result.getErrorMessage());
+        }
 
-                // Send payment confirmation email
-                User user = userRepository.findById(userId).orElse(null);
-                if (user != null) {
-                    emailService.sendPaymentConfirmationEmail(user, payment, invoice);
-                }
-            } else {
-                payment.setStatus(PaymentStatus.FAILED);
-                payment.setFailureReason(result.getErrorMessage());
+        return paymentLogRepository.findById(payment.getId()).orElse(payment);
+    }
 
-                log.error("Payment failed: {} - {}", payment.getTransactionId(), result.getErrorMessage());
+    private void markInvoicePaid(Invoice invoice) {
+        invoice.setStatus(InvoiceStatus.PAID);
+        invoice.setPaidDate(LocalDate.now());
+        invoiceRepository.save(invoice);
+    }
+
+    /**
+     * Resolve payments left PENDING by a crash, a redeploy or a gateway call
+     * whose outcome never came back, by looking up their transaction at the gateway.
+     */
+    @Scheduled(fixedDelayString = "${payment.recovery.interval-ms:60000}")
+    public void recoverPendingPayments() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(recoverAfterMillis));
+        Query stale = Query.query(Criteria.where("status").is(PaymentStatus.PENDING).and("createdAt").lt(cutoff))
+                .with(Sort.by(Sort.Order.asc("createdAt")))
+                .limit(recoveryBatchSize);
+
+        for (PaymentLog payment : mongoTemplate.find(stale, PaymentLog.class)) {
+            try {
+                reconcile(payment);
+                log.info("Reconciled pending payment {}", payment.getTransactionId());
+            } catch (GatewayUnavailableException e) {
+                log.warn("Payment recovery paused, gateway unavailable: {}", e.getMessage());
+                return;
+            } catch (Exception e) {
+                log.error("Failed to recover payment {}: {}", payment.getTransactionId(), e.getMessage());
             }
+        }
+    }
 
-            payment = paymentLogRepository.save(payment);
+    /**
+     * Settle a PENDING payment with the outcome the gateway recorded for its transaction.
+     */
+    private void reconcile(PaymentLog payment) {
+        Optional<RazorpayService.PaymentResult> found = razorpayService.lookupPayment(payment.getTransactionId());
+        if (found.isEmpty()) {
+            // Never reached the gateway, so nothing was charged and the invoice can be paid again
+            resolve(payment, PaymentStatus.FAILED, null, "Payment was not received by the payment gateway");
+            return;
+        }
 
-        } catch (Exception e) {
-            payment.setStatus(PaymentStatus.FAILED);
-            payment.setFailureReason(e.getMessage());
-            payment = paymentLogRepository.save(payment);
+        RazorpayService.PaymentResult result = found.get();
+        if (!result.isSuccess()) {
+            resolve(payment, PaymentStatus.FAILED, null, result.getErrorMessage());
+            return;
+        }
+        outboxService.enqueue(payment.getId(), OutboxEventType.PAYMENT_CONFIRMATION_EMAIL);
+        if (resolve(payment, PaymentStatus.SUCCESS, result.getPaymentId(), null)) {
+            invoiceRepository.findById(payment.getInvoiceId()).ifPresent(this::markInvoicePaid);
+        }
+    }
 
-            log.error("Payment processing error: {}", e.getMessage());
-            throw new PaymentException("Payment processing failed: " + e.getMessage());
+    /**
+     * Record the outcome of a payment only if it is still PENDING, so a worker
+     * and recovery settling the same payment never overwrite each other.
+     */
+    private boolean resolve(PaymentLog payment, PaymentStatus status, String externalPaymentId,
+            String failureReason) {
+        Update update = new Update().set("status", status).set("failureReason", failureReason);
+        if (status == PaymentStatus.SUCCESS) {
+            update.set("externalPaymentId", externalPaymentId).set("processedAt", LocalDateTime.now());
+        }
+        boolean resolved = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(payment.getId()).and("status").is(PaymentStatus.PENDING)),
+                update, PaymentLog.class).getModifiedCount() > 0;
+        if (!resolved) {
+            log.info("Payment {} was already settled, {} not recorded", payment.getTransactionId(), status);
         }
+        return resolved;
+    }
 
+    /**
+     * Get a user's payment by ID.
+     */
+    public PaymentResponse getPaymentByIdAndUser(String id, String userId) {
+        PaymentLog payment = paymentLogRepository.findById(id)
+                .filter(p -> p.getUserId().equals(userId))
+                .orElseThrow(() -> new ResourceNotFoundException("Payment", "id", id));
         return dtoMapper.toPaymentResponse(payment);
     }
 
@@ -163,6 +374,14 @@ public class PaymentService {
         return dtoMapper.toPageResponse(page);
     }
 
+    /**
+     * Get all payments with cursor pagination.
+     */
+    public CursorPageResponse<PaymentResponse> getAllPayments(String cursor, int size) {
+        return cursorPager.page(PaymentLog.class, null, "createdAt",
+                PaymentLog::getCreatedAt, PaymentLog::getId, cursor, size, dtoMapper::toPaymentResponse);
+    }
+
     /**
      * Get payments by status.
      */
@@ -208,6 +427,8 @@ public class PaymentService {
 
             payment = paymentLogRepository.save(payment);
 
+        } catch (GatewayUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Refund processing error: {}", e.getMessage());
             throw new PaymentException("Refund processing failed: " + e.getMessage());
@@ -216,13 +437,6 @@ public class PaymentService {
         return dtoMapper.toPaymentResponse(payment);
     }
 
-    /**
-     * Generate unique transaction ID.
-     */
-    private String generateTransactionId() {
-        return "TXN-" + UUID.randomUUID().toString().substring(0, 12).toUpperCase();
-    }
-
     /**
      * Find payment entity by ID.
      */
@@ -0,0 +1,221 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.Plan;
+import com.project.saasbilling.repository.PlanRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-process catalog of all plans.
+ * The catalog is an immutable snapshot swapped atomically on refresh, so
+ * lookups are lock-free map reads. Every plan mutation bumps a version
+ * counter in Redis and announces it on a pub/sub channel; nodes reload when
+ * they see a version newer than their snapshot, and a periodic version check
+ * catches announcements missed while a node was disconnected. A version bump
+ * that fails is retried on the next check, and a snapshot older than
+ * plans.catalog.max-age-ms is reloaded regardless of the version, which
+ * bounds staleness while Redis is unreachable. Plans handed
+ * out are shared and must be treated as read-only; mutations load their own
+ * copy from the repository.
+ */
+@Service
+@Slf4j
+public class PlanCatalog {
+
+    private static final String VERSION_KEY = "plans:catalog:version";
+    private static final String CHANNEL = "plans:catalog";
+
+    private static final Comparator<Plan> DISPLAY_ORDER = Comparator
+            .comparing(Plan::getSortOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Plan::getName, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final PlanRepository planRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    // Set while a plan change has not been published to the shared version yet
+    private final AtomicBoolean bumpPending = new AtomicBoolean();
+
+    @Value("${plans.catalog.max-age-ms:600000}")
+    private long maxAgeMillis;
+
+    private volatile Snapshot snapshot = new Snapshot(0, System.nanoTime(), Map.of(), List.of());
+
+    private record Snapshot(long version, long loadedAtNanos, Map<String, Plan> byId, List<Plan> ordered) {
+    }
+
+    public PlanCatalog(PlanRepository planRepository, StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer, MeterRegistry meterRegistry) {
+        this.planRepository = planRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        Gauge.builder("plans.catalog.version", this, PlanCatalog::version)
+                .description("Version of the in-process plan catalog")
+                .register(meterRegistry);
+        Gauge.builder("plans.catalog.size", this, catalog -> catalog.snapshot.byId().size())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        reload(readVersion());
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                long announced = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+                if (announced > snapshot.version()) {
+                    reload(announced);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to apply plan catalog update: {}", e.getMessage());
+            }
+        }, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Get a plan by id.
+     */
+    public Optional<Plan> findById(String id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(snapshot.byId().get(id));
+    }
+
+    /**
+     * Get plans by id; unknown ids are absent from the result.
+     */
+    public Map<String, Plan> findAllById(Collection<String> ids) {
+        Map<String, Plan> byId = snapshot.byId();
+        Map<String, Plan> result = new HashMap<>();
+        for (String id : ids) {
+            Plan plan = byId.get(id);
+            if (plan != null) {
+                result.put(id, plan);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get active plans in display order.
+     */
+    public List<Plan> getActivePlans() {
+        return snapshot.ordered().stream()
+                .filter(plan -> Boolean.TRUE.equals(plan.getActive()))
+                .toList();
+    }
+
+    /**
+     * Run an action after every reload, on whichever node reloads; used to drop caches embedding plans.
+     */
+    public void onReload(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public long version() {
+        return snapshot.version();
+    }
+
+    /**
+     * Record a plan mutation: bump the shared version, reload this node and
+     * tell the other nodes to reload.
+     */
+    public void planChanged() {
+        bumpPending.set(true);
+        Long version = bumpVersion();
+        reload(version != null ? version : snapshot.version());
+        if (version != null) {
+            announce(version);
+        }
+    }
+
+    /**
+     * Publish a plan change whose version bump failed, reload if the shared
+     * version moved while an announcement was missed, and reload a snapshot
+     * that has outlived the maximum age.
+     */
+    @Scheduled(fixedDelayString = "${plans.catalog.check-interval-ms:30000}")
+    public void checkVersion() {
+        if (bumpPending.get()) {
+            Long version = bumpVersion();
+            if (version != null) {
+                reload(version);
+                announce(version);
+                return;
+            }
+        }
+
+        long shared = readVersion();
+        if (shared > snapshot.version()) {
+            log.info("Plan catalog version {} behind shared version {}, reloading", snapshot.version(), shared);
+            reload(shared);
+        } else if (System.nanoTime() - snapshot.loadedAtNanos() > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)) {
+            // Changes made while Redis was unreachable on every node never moved the shared version
+            reload(snapshot.version());
+        }
+    }
+
+    /**
+     * Increment the shared version. Returns null if Redis is unreachable, in
+     * which case the bump stays pending and is retried on the next check.
+     */
+    private Long bumpVersion() {
+        try {
+            Long version = redisTemplate.opsForValue().increment(VERSION_KEY);
+            bumpPending.set(false);
+            return version;
+        } catch (Exception e) {
+            log.warn("Failed to bump plan catalog version, other nodes keep the old plans until it is retried"
+                    + " on the next check: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void announce(long version) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, Long.toString(version));
+        } catch (Exception e) {
+            log.warn("Failed to announce plan catalog version {}: {}", version, e.getMessage());
+        }
+    }
+
+    /**
+     * Load all plans into a new snapshot and publish it. Serialized so an
+     * older load can never replace a newer one.
+     */
+    private synchronized void reload(long version) {
+        long target = Math.max(version, snapshot.version());
+        List<Plan> plans = planRepository.findAll();
+        Map<String, Plan> byId = Collections.unmodifiableMap(plans.stream()
+                .collect(Collectors.toMap(Plan::getId, Function.identity())));
+        List<Plan> ordered = plans.stream().sorted(DISPLAY_ORDER).toList();
+        snapshot = new Snapshot(target, System.nanoTime(), byId, ordered);
+        log.debug("Plan catalog loaded {} plans at version {}", plans.size(), target);
+        reloadListeners.forEach(Runnable::run);
+    }
+
+    private long readVersion() {
+        try {
+            String value = redisTemplate.opsForValue().get(VERSION_KEY);
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (Exception e) {
+            log.warn("Failed to read plan catalog version: {}", e.getMessage());
+            return snapshot.version();
+        }
+    }
+}
@@ -10,8 +10,6 @@ import com.project.saasbilling.repository.PlanRepository;
 import com.project.saasbilling.util.DtoMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -29,15 +27,14 @@ import java.util.stream.Collectors;
 public class PlanService {
 
     private final PlanRepository planRepository;
+    private final PlanCatalog planCatalog;
     private final DtoMapper dtoMapper;
 
     /**
-     * Get all active plans (cached).
+     * Get all active plans from the plan catalog.
      */
-    @Cacheable(value = "plans", key = "'active'")
     public List<PlanResponse> getActivePlans() {
-        log.debug("Fetching active plans from database");
-        return planRepository.findByActiveTrueOrderBySortOrderAsc()
+        return planCatalog.getActivePlans()
                 .stream()
                 .map(dtoMapper::toPlanResponse)
                 .collect(Collectors.toList());
@@ -63,11 +60,10 @@ public class PlanService {
     /**
      * Get featured plans.
      */
-    @Cacheable(value = "plans", key = "'featured'")
     public List<PlanResponse> getFeaturedPlans() {
-        return planRepository.findByActiveTrue()
+        return planCatalog.getActivePlans()
                 .stream()
-                .filter(Plan::getIsFeatured)
+                .filter(plan -> Boolean.TRUE.equals(plan.getIsFeatured()))
                 .map(dtoMapper::toPlanResponse)
                 .collect(Collectors.toList());
     }
@@ -75,7 +71,6 @@ public class PlanService {
     /**
      * Create a new plan.
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public PlanResponse createPlan(PlanRequest request) {
         log.info("Creating new plan: {}", request.getName());
 
@@ -93,6 +88,9 @@ public class PlanService {
                 .apiCallsLimit(request.getApiCallsLimit())
                 .storageLimitMb(request.getStorageLimitMb())
                 .usersLimit(request.getUsersLimit())
+                .usageOveragePrice(request.getUsageOveragePrice())
+                .apiCallsOveragePrice(request.getApiCallsOveragePrice())
+                .storageOveragePrice(request.getStorageOveragePrice())
                 .isFeatured(request.getIsFeatured() != null ? request.getIsFeatured() : false)
                 .trialDays(request.getTrialDays() != null ? request.getTrialDays() : 0)
                 .features(request.getFeatures())
@@ -101,6 +99,7 @@ public class PlanService {
                 .build();
 
         plan = planRepository.save(plan);
+        planChanged();
         log.info("Plan created with id: {}", plan.getId());
 
         return dtoMapper.toPlanResponse(plan);
@@ -109,9 +108,8 @@ public class PlanService {
     /**
      * Update an existing plan.
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public PlanResponse updatePlan(String id, PlanRequest request) {
-        Plan plan = findPlanById(id);
+        Plan plan = loadPlan(id);
 
         if (request.getName() != null && !request.getName().equals(plan.getName())) {
             if (planRepository.existsByName(request.getName())) {
@@ -144,6 +142,15 @@ public class PlanService {
         if (request.getUsersLimit() != null) {
             plan.setUsersLimit(request.getUsersLimit());
         }
+        if (request.getUsageOveragePrice() != null) {
+            plan.setUsageOveragePrice(request.getUsageOveragePrice());
+        }
+        if (request.getApiCallsOveragePrice() != null) {
+            plan.setApiCallsOveragePrice(request.getApiCallsOveragePrice());
+        }
+        if (request.getStorageOveragePrice() != null) {
+            plan.setStorageOveragePrice(request.getStorageOveragePrice());
+        }
         if (request.getIsFeatured() != null) {
             plan.setIsFeatured(request.getIsFeatured());
         }
@@ -158,6 +165,7 @@ public class PlanService {
         }
 
         plan = planRepository.save(plan);
+        planChanged();
         log.info("Plan updated: {}", id);
 
         return dtoMapper.toPlanResponse(plan);
@@ -166,33 +174,33 @@ public class PlanService {
     /**
      * Deactivate a plan (soft delete).
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public void deactivatePlan(String id) {
-        Plan plan = findPlanById(id);
+        Plan plan = loadPlan(id);
         plan.setActive(false);
         planRepository.save(plan);
+        planChanged();
         log.info("Plan deactivated: {}", id);
     }
 
     /**
      * Activate a plan.
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public void activatePlan(String id) {
-        Plan plan = findPlanById(id);
+        Plan plan = loadPlan(id);
         plan.setActive(true);
         planRepository.save(plan);
+        planChanged();
         log.info("Plan activated: {}", id);
     }
 
     /**
      * Toggle plan active status and return updated plan.
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public PlanResponse togglePlanActive(String id) {
-        Plan plan = findPlanById(id);
+        Plan plan = loadPlan(id);
         plan.setActive(!Boolean.TRUE.equals(plan.getActive()));
         Plan saved = planRepository.save(plan);
+        planChanged();
         log.info("Plan {} toggled to active={}", id, saved.getActive());
         return dtoMapper.toPlanResponse(saved);
     }
@@ -200,18 +208,33 @@ public class PlanService {
     /**
      * Delete a plan permanently.
      */
-    @CacheEvict(value = "plans", allEntries = true)
     public void deletePlan(String id) {
-        Plan plan = findPlanById(id);
+        Plan plan = loadPlan(id);
         planRepository.delete(plan);
+        planChanged();
         log.info("Plan deleted: {}", id);
     }
 
     /**
-     * Get plan entity by ID.
+     * Get plan entity by ID from the plan catalog. The plan is shared and must not be modified.
      */
     public Plan findPlanById(String id) {
+        return planCatalog.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", id));
+    }
+
+    /**
+     * Load a private copy of a plan to modify.
+     */
+    private Plan loadPlan(String id) {
         return planRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", id));
     }
+
+    /**
+     * Refresh the plan catalog on every node.
+     */
+    private void planChanged() {
+        planCatalog.planChanged();
+    }
 }
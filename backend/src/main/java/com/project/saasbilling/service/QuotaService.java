@@ -0,0 +1,360 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.exception.QuotaExceededException;
+import com.project.saasbilling.model.Plan;
+import com.project.saasbilling.model.QuotaType;
+import com.project.saasbilling.model.Subscription;
+import com.project.saasbilling.repository.SubscriptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory plan quota engine for usage ingest.
+ * Holds current-period consumed counters per subscription so quota checks
+ * cost a map lookup and a CAS. Counters are reconciled against usage rollups
+ * periodically. With several nodes, each node leases quota chunks from a
+ * shared Redis counter instead of coordinating on every event.
+ */
+@Service
+@Slf4j
+public class QuotaService {
+
+    public enum Mode {
+        OFF,
+        FLAG,
+        REJECT
+    }
+
+    private static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>("""
+            local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+            local grant = math.min(tonumber(ARGV[2]), tonumber(ARGV[1]) - used)
+            if grant <= 0 then return 0 end
+            redis.call('INCRBY', KEYS[1], grant)
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return grant
+            """, Long.class);
+
+    private static final RedisScript<Long> RAISE_SCRIPT = new DefaultRedisScript<>("""
+            local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+            local floor = tonumber(ARGV[1])
+            if floor <= used then return used end
+            redis.call('SET', KEYS[1], floor, 'PX', ARGV[2])
+            return floor
+            """, Long.class);
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final PlanCatalog planCatalog;
+    private final MetricQuotaMapping metricQuotaMapping;
+    private final UsageRollupService usageRollupService;
+    private final StringRedisTemplate redisTemplate;
+    private final Counter flaggedCounter;
+    private final Counter rejectedCounter;
+
+    private final Map<String, QuotaState> states = new ConcurrentHashMap<>();
+
+    @Value("${usage.quota.mode:FLAG}")
+    private Mode mode;
+
+    @Value("${usage.quota.distributed:false}")
+    private boolean distributed;
+
+    @Value("${usage.quota.lease-size:1000}")
+    private long leaseSize;
+
+    public QuotaService(SubscriptionRepository subscriptionRepository, PlanCatalog planCatalog,
+            MetricQuotaMapping metricQuotaMapping, UsageRollupService usageRollupService,
+            StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.planCatalog = planCatalog;
+        this.metricQuotaMapping = metricQuotaMapping;
+        this.usageRollupService = usageRollupService;
+        this.redisTemplate = redisTemplate;
+        this.flaggedCounter = Counter.builder("usage.quota.events")
+                .tag("outcome", "flagged")
+                .description("Usage events over quota that were accepted and flagged")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("usage.quota.events")
+                .tag("outcome", "rejected")
+                .description("Usage events rejected for exceeding quota")
+                .register(meterRegistry);
+        Gauge.builder("usage.quota.subscriptions", states, Map::size)
+                .description("Subscriptions with quota state held in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Consume quota for a usage event.
+     * Returns true if the event is over quota and was accepted (flag mode);
+     * throws in reject mode.
+     */
+    public boolean consume(UsageLookupCache.SubscriptionSnapshot subscription, String metricName, long value) {
+        if (mode == Mode.OFF || subscription == null) {
+            return false;
+        }
+
+        QuotaType type = metricQuotaMapping.quotaFor(metricName);
+        QuotaState state = stateFor(subscription);
+        Long limit = state.limits.get(type);
+        if (limit == null) {
+            return false;
+        }
+
+        boolean withinQuota = distributed
+                ? consumeLease(state, type, limit, value)
+                : consumeLocal(state, type, limit, value);
+        if (withinQuota) {
+            return false;
+        }
+
+        if (mode == Mode.REJECT) {
+            rejectedCounter.increment();
+            throw new QuotaExceededException(String.format("Plan %s limit of %d exceeded for subscription '%s'",
+                    type.name().toLowerCase(), limit, subscription.id()));
+        }
+        flaggedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Give back quota consumed for an event that was not stored after all,
+     * e.g. a failed insert or a duplicate detected by the unique index.
+     * {@code overQuota} is the value {@link #consume} returned for the event.
+     */
+    public void refund(UsageLookupCache.SubscriptionSnapshot subscription, String metricName, long value,
+            boolean overQuota) {
+        if (mode == Mode.OFF || subscription == null) {
+            return;
+        }
+        // State reloaded since the event was consumed is seeded from rollups and never counted it
+        QuotaState state = states.get(subscription.id());
+        QuotaType type = metricQuotaMapping.quotaFor(metricName);
+        if (state == null || state.limits.get(type) == null) {
+            return;
+        }
+
+        if (!distributed) {
+            state.consumed.get(type).addAndGet(-value);
+        } else if (!overQuota) {
+            // Flagged events never drew from the lease; others return to it for the next event
+            state.leased.get(type).addAndGet(value);
+        }
+    }
+
+    /**
+     * Drop cached quota state for a subscription, e.g. after a plan change or renewal.
+     */
+    public void invalidate(String subscriptionId) {
+        states.remove(subscriptionId);
+    }
+
+    /**
+     * Reconcile quota counters against usage rollups and refresh plan limits.
+     * Local counters and, in distributed mode, the shared Redis counters are
+     * raised to at least the usage recorded in the rollups, e.g. after Redis
+     * lost its counters. Counters are never lowered: a shared counter also
+     * holds quota leased to nodes but not used yet.
+     */
+    @Scheduled(fixedDelayString = "${usage.quota.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (mode == Mode.OFF || states.isEmpty()) {
+            return;
+        }
+
+        Map<String, Subscription> subscriptions = subscriptionRepository.findAllById(states.keySet())
+                .stream()
+                .collect(Collectors.toMap(Subscription::getId, Function.identity()));
+        LocalDateTime now = LocalDateTime.now();
+
+        for (Map.Entry<String, QuotaState> entry : states.entrySet()) {
+            QuotaState state = entry.getValue();
+            Subscription subscription = subscriptions.get(entry.getKey());
+
+            // Stale state is dropped and lazily reloaded on the next event
+            if (subscription == null
+                    || !Objects.equals(subscription.getPlanId(), state.planId)
+                    || !Objects.equals(subscription.getStartDate(), state.periodStart)
+                    || (state.periodEnd != null && now.isAfter(state.periodEnd))) {
+                states.remove(entry.getKey(), state);
+                continue;
+            }
+
+            Map<QuotaType, Long> rolledUp = consumedSince(subscription.getId(), state.periodStart);
+            if (distributed) {
+                raiseShared(state, rolledUp);
+            } else {
+                state.consumed.forEach((type, consumed) ->
+                        consumed.accumulateAndGet(rolledUp.getOrDefault(type, 0L), Math::max));
+            }
+        }
+        log.debug("Reconciled quota state for {} subscriptions", states.size());
+    }
+
+    private boolean consumeLocal(QuotaState state, QuotaType type, long limit, long value) {
+        AtomicLong consumed = state.consumed.get(type);
+        long total = consumed.addAndGet(value);
+        if (total <= limit) {
+            return true;
+        }
+        if (mode == Mode.REJECT) {
+            consumed.addAndGet(-value);
+        }
+        return false;
+    }
+
+    private boolean consumeLease(QuotaState state, QuotaType type, long limit, long value) {
+        AtomicLong lease = state.leased.get(type);
+        while (true) {
+            long remaining = lease.get();
+            if (remaining >= value) {
+                if (lease.compareAndSet(remaining, remaining - value)) {
+                    return true;
+                }
+                continue;
+            }
+
+            synchronized (lease) {
+                if (lease.get() >= value) {
+                    continue;
+                }
+                long granted = leaseChunk(state, type, limit, Math.max(leaseSize, value));
+                if (granted <= 0) {
+                    return false;
+                }
+                lease.addAndGet(granted);
+                if (lease.get() < value) {
+                    // Not enough global quota left for this event; keep the lease for smaller ones
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lease a chunk of quota from the shared Redis counter.
+     * Falls back to allowing the event if Redis is unavailable.
+     */
+    private long leaseChunk(QuotaState state, QuotaType type, long limit, long chunk) {
+        try {
+            Long granted = redisTemplate.execute(LEASE_SCRIPT, List.of(state.redisKey(type)),
+                    String.valueOf(limit), String.valueOf(chunk), String.valueOf(state.redisTtlMillis()));
+            return granted != null ? granted : 0L;
+        } catch (Exception e) {
+            log.warn("Quota lease unavailable, allowing usage locally: {}", e.getMessage());
+            return chunk;
+        }
+    }
+
+    private void raiseShared(QuotaState state, Map<QuotaType, Long> rolledUp) {
+        try {
+            for (QuotaType type : QuotaType.values()) {
+                if (state.limits.get(type) != null) {
+                    redisTemplate.execute(RAISE_SCRIPT, List.of(state.redisKey(type)),
+                            String.valueOf(rolledUp.getOrDefault(type, 0L)), String.valueOf(state.redisTtlMillis()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to reconcile quota counters in Redis: {}", e.getMessage());
+        }
+    }
+
+    private QuotaState stateFor(UsageLookupCache.SubscriptionSnapshot subscription) {
+        QuotaState state = states.get(subscription.id());
+        if (state != null) {
+            return state;
+        }
+        return states.computeIfAbsent(subscription.id(), id -> loadState(subscription));
+    }
+
+    private QuotaState loadState(UsageLookupCache.SubscriptionSnapshot subscription) {
+        Plan plan = subscription.planId() != null
+                ? planCatalog.findById(subscription.planId()).orElse(null)
+                : null;
+        LocalDateTime periodStart = subscription.startDate() != null
+                ? subscription.startDate()
+                : LocalDateTime.now();
+
+        QuotaState state = new QuotaState(subscription.id(), subscription.planId(), periodStart,
+                subscription.endDate());
+        Map<QuotaType, Long> consumed = consumedSince(subscription.id(), periodStart);
+        for (QuotaType type : QuotaType.values()) {
+            state.limits.put(type, plan != null ? type.limitOf(plan) : null);
+            state.consumed.get(type).set(consumed.getOrDefault(type, 0L));
+        }
+
+        if (distributed) {
+            seedRedis(state, consumed);
+        }
+        return state;
+    }
+
+    private void seedRedis(QuotaState state, Map<QuotaType, Long> consumed) {
+        try {
+            for (QuotaType type : QuotaType.values()) {
+                if (state.limits.get(type) != null) {
+                    redisTemplate.opsForValue().setIfAbsent(state.redisKey(type),
+                            String.valueOf(consumed.getOrDefault(type, 0L)),
+                            Duration.ofMillis(state.redisTtlMillis()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to seed quota counters in Redis: {}", e.getMessage());
+        }
+    }
+
+    private Map<QuotaType, Long> consumedSince(String subscriptionId, LocalDateTime periodStart) {
+        Map<QuotaType, Long> consumed = new EnumMap<>(QuotaType.class);
+        usageRollupService.summarizeSubscription(subscriptionId, periodStart)
+                .forEach((metric, total) -> consumed.merge(metricQuotaMapping.quotaFor(metric), total, Long::sum));
+        return consumed;
+    }
+
+    private static final class QuotaState {
+        private final String subscriptionId;
+        private final String planId;
+        private final LocalDateTime periodStart;
+        private final LocalDateTime periodEnd;
+        private final Map<QuotaType, Long> limits = new EnumMap<>(QuotaType.class);
+        private final Map<QuotaType, AtomicLong> consumed = new EnumMap<>(QuotaType.class);
+        private final Map<QuotaType, AtomicLong> leased = new EnumMap<>(QuotaType.class);
+
+        private QuotaState(String subscriptionId, String planId, LocalDateTime periodStart,
+                LocalDateTime periodEnd) {
+            this.subscriptionId = subscriptionId;
+            this.planId = planId;
+            this.periodStart = periodStart;
+            this.periodEnd = periodEnd;
+            for (QuotaType type : QuotaType.values()) {
+                consumed.put(type, new AtomicLong());
+                leased.put(type, new AtomicLong());
+            }
+        }
+
+        private String redisKey(QuotaType type) {
+            long period = periodStart.atZone(ZoneId.systemDefault()).toEpochSecond();
+            return "quota:" + subscriptionId + ":" + type.name() + ":" + period;
+        }
+
+        private long redisTtlMillis() {
+            // Keep the shared counter a day past the period end
+            LocalDateTime expiry = (periodEnd != null ? periodEnd : LocalDateTime.now().plusMonths(1)).plusDays(1);
+            return Math.max(Duration.between(LocalDateTime.now(), expiry).toMillis(), 60_000L);
+        }
+    }
+}
@@ -4,22 +4,30 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Mock Razorpay payment gateway service.
  * In production, this would integrate with actual Razorpay APIs.
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class RazorpayService {
 
+    private final GatewayGuard gatewayGuard;
+    private final SignatureService signatureService;
+
     @Value("${external.razorpay.key-id}")
     private String keyId;
 
@@ -31,10 +39,51 @@ public class RazorpayService {
 
     private final Random random = new Random();
 
+    // Payments the mock gateway has seen, by our order id, so they can be looked up again
+    private final Map<String, PaymentResult> payments = new ConcurrentHashMap<>();
+
     /**
-     * Process a payment through Razorpay (mock implementation).
+     * Process a payment through Razorpay, guarded by the gateway circuit breaker and limits.
      */
     public PaymentResult processPayment(String orderId, BigDecimal amount, String currency) {
+        return gatewayGuard.call("payment", () -> sendPayment(orderId, amount, currency));
+    }
+
+    /**
+     * Process a payment for background work, waiting up to {@code maxWaitMillis}
+     * for the gateway to accept calls instead of being rejected.
+     */
+    public PaymentResult processPayment(String orderId, BigDecimal amount, String currency, long maxWaitMillis) {
+        return gatewayGuard.callWhenAvailable("payment", () -> sendPayment(orderId, amount, currency),
+                maxWaitMillis);
+    }
+
+    /**
+     * Look up a payment the gateway received for an order, guarded by the gateway
+     * circuit breaker and limits. Empty when the gateway never saw the order.
+     */
+    public Optional<PaymentResult> lookupPayment(String orderId) {
+        return gatewayGuard.call("lookup", () -> fetchPayment(orderId));
+    }
+
+    /**
+     * Process a refund through Razorpay, guarded by the gateway circuit breaker and limits.
+     */
+    public RefundResult processRefund(String paymentId, BigDecimal amount) {
+        return gatewayGuard.call("refund", () -> sendRefund(paymentId, amount));
+    }
+
+    /**
+     * Create a Razorpay order, guarded by the gateway circuit breaker and limits.
+     */
+    public OrderResult createOrder(BigDecimal amount, String currency, String receipt) {
+        return gatewayGuard.call("order", () -> sendCreateOrder(amount, currency, receipt));
+    }
+
+    /**
+     * Process a payment through Razorpay (mock implementation).
+     */
+    private PaymentResult sendPayment(String orderId, BigDecimal amount, String currency) {
         log.info("Processing Razorpay payment - Order: {}, Amount: {} {}", orderId, amount, currency);
 
         // Simulate API call delay
@@ -47,34 +96,50 @@ public class RazorpayService {
             String paymentId = "pay_" + UUID.randomUUID().toString().substring(0, 14);
             log.info("Razorpay payment successful - Payment ID: {}", paymentId);
 
-            return PaymentResult.builder()
+            return record(PaymentResult.builder()
                     .success(true)
                     .paymentId(paymentId)
                     .orderId(orderId)
                     .amount(amount)
                     .currency(currency)
                     .response("{\"status\":\"captured\",\"payment_id\":\"" + paymentId + "\"}")
-                    .build();
+                    .build());
         } else {
             String errorCode = "PAYMENT_FAILED";
             String errorMessage = "Payment declined by bank";
             log.error("Razorpay payment failed - Order: {}, Error: {}", orderId, errorMessage);
 
-            return PaymentResult.builder()
+            return record(PaymentResult.builder()
                     .success(false)
                     .orderId(orderId)
                     .errorCode(errorCode)
                     .errorMessage(errorMessage)
                     .response("{\"status\":\"failed\",\"error\":{\"code\":\"" + errorCode +
                             "\",\"description\":\"" + errorMessage + "\"}}")
-                    .build();
+                    .build());
         }
     }
 
+    /**
+     * Fetch the payment of an order from Razorpay (mock implementation).
+     */
+    private Optional<PaymentResult> fetchPayment(String orderId) {
+        log.debug("Fetching Razorpay payment - Order: {}", orderId);
+
+        simulateApiCall();
+
+        return Optional.ofNullable(payments.get(orderId));
+    }
+
+    private PaymentResult record(PaymentResult result) {
+        payments.put(result.getOrderId(), result);
+        return result;
+    }
+
     /**
      * Process a refund through Razorpay (mock implementation).
      */
-    public RefundResult processRefund(String paymentId, BigDecimal amount) {
+    private RefundResult sendRefund(String paymentId, BigDecimal amount) {
         log.info("Processing Razorpay refund - Payment: {}, Amount: {}", paymentId, amount);
 
         // Simulate API call delay
@@ -110,7 +175,7 @@ public class RazorpayService {
     /**
      * Create a Razorpay order (mock implementation).
      */
-    public OrderResult createOrder(BigDecimal amount, String currency, String receipt) {
+    private OrderResult sendCreateOrder(BigDecimal amount, String currency, String receipt) {
         log.info("Creating Razorpay order - Amount: {} {}, Receipt: {}", amount, currency, receipt);
 
         simulateApiCall();
@@ -128,12 +193,11 @@ public class RazorpayService {
     }
 
     /**
-     * Verify payment signature (mock implementation).
+     * Verify a checkout payment signature against the API key secret.
      */
     public boolean verifyPaymentSignature(String orderId, String paymentId, String signature) {
-        log.info("Verifying Razorpay signature - Order: {}, Payment: {}", orderId, paymentId);
-        // In production, this would verify the HMAC signature
-        return true;
+        log.debug("Verifying Razorpay signature - Order: {}, Payment: {}", orderId, paymentId);
+        return signatureService.verifyPayment(orderId, paymentId, signature);
     }
 
     /**
@@ -0,0 +1,63 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.util.HmacSha256;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * HMAC-SHA256 verification of gateway signatures.
+ * Checkout signatures are keyed with the API key secret, webhooks with the
+ * webhook secret. Verifications are timed per kind, so throughput and latency
+ * are visible on the metrics endpoint.
+ */
+@Service
+@Slf4j
+public class SignatureService {
+
+    private final HmacSha256 paymentSigner;
+    private final HmacSha256 webhookSigner;
+    private final Timer paymentTimer;
+    private final Timer webhookTimer;
+
+    public SignatureService(MeterRegistry meterRegistry,
+            @Value("${external.razorpay.key-secret}") String keySecret,
+            @Value("${external.razorpay.webhook-secret:}") String webhookSecret) {
+        this.paymentSigner = new HmacSha256(keySecret);
+        this.webhookSigner = webhookSecret.isBlank() ? null : new HmacSha256(webhookSecret);
+        if (webhookSigner == null) {
+            log.warn("No webhook secret configured, gateway webhooks will be rejected");
+        }
+        this.paymentTimer = verifyTimer(meterRegistry, "payment");
+        this.webhookTimer = verifyTimer(meterRegistry, "webhook");
+    }
+
+    /**
+     * Verify a checkout signature: hex HMAC of "orderId|paymentId".
+     */
+    public boolean verifyPayment(String orderId, String paymentId, String signature) {
+        if (orderId == null || paymentId == null) {
+            return false;
+        }
+        return paymentTimer.record(() -> paymentSigner.verifyHex(signature, orderId, paymentId));
+    }
+
+    /**
+     * Verify a webhook signature: hex HMAC of the raw request body.
+     */
+    public boolean verifyWebhook(String payload, String signature) {
+        if (webhookSigner == null || payload == null) {
+            return false;
+        }
+        return webhookTimer.record(() -> webhookSigner.verifyHex(signature, payload));
+    }
+
+    private static Timer verifyTimer(MeterRegistry meterRegistry, String kind) {
+        return Timer.builder("signature.verify")
+                .description("HMAC-SHA256 signature verifications")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+}
@@ -1,19 +1,32 @@
 package com.project.saasbilling.service;
 
+import com.project.saasbilling.dto.CursorPageResponse;
 import com.project.saasbilling.dto.PageResponse;
 import com.project.saasbilling.dto.SubscriptionRequest;
 import com.project.saasbilling.dto.SubscriptionResponse;
 import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.exception.ConflictException;
 import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.*;
-import com.project.saasbilling.repository.PlanRepository;
 import com.project.saasbilling.repository.SubscriptionRepository;
 import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.CursorPager;
 import com.project.saasbilling.util.DtoMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -29,13 +42,59 @@ import java.util.stream.Collectors;
 @Slf4j
 public class SubscriptionService {
 
+    private static final String ALREADY_SUBSCRIBED = "User already has an active subscription";
+
     private final SubscriptionRepository subscriptionRepository;
     private final UserRepository userRepository;
-    private final PlanRepository planRepository;
+    private final PlanCatalog planCatalog;
     private final InvoiceService invoiceService;
     private final EmailService emailService;
+    private final OutboxService outboxService;
     private final MockPaymentService mockPaymentService;
+    private final QuotaService quotaService;
+    private final UsageLookupCache usageLookupCache;
+    private final ActiveSubscriptionCache activeSubscriptionCache;
+    private final MeteredBillingService meteredBillingService;
+    private final MongoTemplate mongoTemplate;
     private final DtoMapper dtoMapper;
+    private final CursorPager cursorPager;
+
+    @PostConstruct
+    public void init() {
+        ensureIndexes();
+        initVersions();
+    }
+
+    /**
+     * Ensure the partial unique index allowing one ACTIVE or TRIAL subscription per user exists.
+     * The index is the only enforcement of that rule, so startup fails if it cannot be built,
+     * e.g. because existing data already holds duplicates.
+     */
+    private void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(Subscription.class).ensureIndex(new Index()
+                    .named("user_live_unique_idx")
+                    .on("userId", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("status")
+                            .in(SubscriptionStatus.ACTIVE.name(), SubscriptionStatus.TRIAL.name()))));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to ensure user_live_unique_idx; resolve users with more than one"
+                    + " ACTIVE or TRIAL subscription before starting: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Give subscriptions written before versioning an initial version, so
+     * they are updated rather than re-inserted when saved.
+     */
+    private void initVersions() {
+        long updated = mongoTemplate.updateMulti(Query.query(Criteria.where("version").exists(false)),
+                Update.update("version", 0L), Subscription.class).getModifiedCount();
+        if (updated > 0) {
+            log.info("Initialized version of {} subscriptions", updated);
+        }
+    }
 
     /**
      * Create a new subscription for a user.
@@ -45,18 +104,13 @@ public class SubscriptionService {
 
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
-        Plan plan = planRepository.findById(request.getPlanId())
+        Plan plan = planCatalog.findById(request.getPlanId())
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", request.getPlanId()));
 
         if (!plan.getActive()) {
             throw new BadRequestException("Selected plan is not active");
         }
 
-        // Check for existing active subscription
-        if (subscriptionRepository.existsByUserIdAndStatus(userId, SubscriptionStatus.ACTIVE)) {
-            throw new BadRequestException("User already has an active subscription");
-        }
-
         // Check if payment is required for this plan
         boolean requiresPayment = (plan.getTrialDays() == null || plan.getTrialDays() == 0)
                 && plan.getPrice() != null
@@ -88,6 +142,8 @@ public class SubscriptionService {
                 : null;
 
         Subscription subscription = Subscription.builder()
+                // Assigned up front so the outbox can reference the subscription before it is saved
+                .id(new ObjectId().toHexString())
                 .userId(userId)
                 .planId(plan.getId())
                 // Denormalized fields for easy access
@@ -103,18 +159,23 @@ public class SubscriptionService {
                 .autoRenew(request.getAutoRenew() != null ? request.getAutoRenew() : true)
                 .build();
 
-        subscription = subscriptionRepository.save(subscription);
-        log.info("Subscription created with id: {}", subscription.getId());
-
-        // Generate initial invoice for paid plans (skip for trial)
+        // Initial invoice for paid plans (skip for trial) and the welcome email are delivered by the outbox relay
         boolean isTrial = plan.getTrialDays() != null && plan.getTrialDays() > 0;
         if (!isTrial && plan.getPrice() != null && plan.getPrice().compareTo(java.math.BigDecimal.ZERO) > 0) {
-            invoiceService.generateInvoice(subscription, user, plan);
-            log.info("Invoice generated for subscription: {}", subscription.getId());
+            outboxService.enqueue(subscription.getId(), OutboxEventType.SUBSCRIPTION_INVOICE,
+                    OutboxEventType.SUBSCRIPTION_CREATED_EMAIL);
+        } else {
+            outboxService.enqueue(subscription.getId(), OutboxEventType.SUBSCRIPTION_CREATED_EMAIL);
         }
 
-        // Send email notification
-        emailService.sendSubscriptionCreatedEmail(user, subscription);
+        try {
+            subscription = subscriptionRepository.save(subscription);
+        } catch (DuplicateKeyException e) {
+            // The partial unique index on userId admits one ACTIVE or TRIAL subscription per user
+            throw new BadRequestException(ALREADY_SUBSCRIBED);
+        }
+        activeSubscriptionCache.invalidate(userId);
+        log.info("Subscription created with id: {}", subscription.getId());
 
         return dtoMapper.toSubscriptionResponse(subscription, plan);
     }
@@ -151,12 +212,7 @@ public class SubscriptionService {
      * Get user's active subscription (returns null if no active subscription).
      */
     public SubscriptionResponse getActiveSubscription(String userId) {
-        return subscriptionRepository.findByUserId(userId)
-                .stream()
-                .filter(s -> s.getStatus() == SubscriptionStatus.ACTIVE || s.getStatus() == SubscriptionStatus.TRIAL)
-                .findFirst()
-                .map(dtoMapper::toSubscriptionResponse)
-                .orElse(null);
+        return activeSubscriptionCache.get(userId);
     }
 
     /**
@@ -177,6 +233,14 @@ public class SubscriptionService {
         return dtoMapper.toPageResponse(page);
     }
 
+    /**
+     * Get all subscriptions with cursor pagination.
+     */
+    public CursorPageResponse<SubscriptionResponse> getAllSubscriptions(String cursor, int size) {
+        return cursorPager.page(Subscription.class, null, "createdAt",
+                Subscription::getCreatedAt, Subscription::getId, cursor, size, dtoMapper::toSubscriptionResponse);
+    }
+
     /**
      * Get subscriptions by status.
      */
@@ -188,21 +252,23 @@ public class SubscriptionService {
     }
 
     /**
-     * Cancel a subscription.
+     * Cancel a subscription in one conditional update.
      */
     public SubscriptionResponse cancelSubscription(String id, String reason) {
-        Subscription subscription = findSubscriptionById(id);
-
-        if (subscription.getStatus() == SubscriptionStatus.CANCELLED) {
+        Subscription subscription = transition(
+                Criteria.where("_id").is(id).and("status").ne(SubscriptionStatus.CANCELLED),
+                new Update()
+                        .set("status", SubscriptionStatus.CANCELLED)
+                        .set("cancelledAt", LocalDateTime.now())
+                        .set("cancellationReason", reason)
+                        .set("autoRenew", false));
+        if (subscription == null) {
+            findSubscriptionById(id);
             throw new BadRequestException("Subscription is already cancelled");
         }
 
-        subscription.setStatus(SubscriptionStatus.CANCELLED);
-        subscription.setCancelledAt(LocalDateTime.now());
-        subscription.setCancellationReason(reason);
-        subscription.setAutoRenew(false);
-
-        subscription = subscriptionRepository.save(subscription);
+        quotaService.invalidate(subscription.getId());
+        usageLookupCache.invalidateSubscription(subscription.getId());
         log.info("Subscription cancelled: {}", id);
 
         // Fetch user for email
@@ -216,30 +282,39 @@ public class SubscriptionService {
 
     /**
      * Upgrade/downgrade subscription to a new plan.
+     * The switch only applies if the subscription is still on the plan and
+     * status it was read with.
      */
     public SubscriptionResponse changePlan(String subscriptionId, String newPlanId) {
-        Subscription subscription = findSubscriptionById(subscriptionId);
-        Plan newPlan = planRepository.findById(newPlanId)
+        Subscription current = findSubscriptionById(subscriptionId);
+        Plan newPlan = planCatalog.findById(newPlanId)
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", newPlanId));
 
         if (!newPlan.getActive()) {
             throw new BadRequestException("Selected plan is not active");
         }
 
-        String oldPlanId = subscription.getPlanId();
-        Plan oldPlan = planRepository.findById(oldPlanId).orElse(null);
-
-        // Update subscription with new plan info
-        subscription.setPlanId(newPlan.getId());
-        subscription.setPlanName(newPlan.getName());
-        subscription.setPlanCurrency(newPlan.getCurrency());
+        String oldPlanId = current.getPlanId();
+        Plan oldPlan = planCatalog.findById(oldPlanId).orElse(null);
 
         // Recalculate end date based on new plan's billing cycle
         LocalDateTime newEndDate = calculateEndDate(LocalDateTime.now(), newPlan.getBillingCycle());
-        subscription.setEndDate(newEndDate);
-        subscription.setNextBillingDate(newEndDate);
+        Subscription subscription = transition(
+                Criteria.where("_id").is(subscriptionId)
+                        .and("status").is(current.getStatus())
+                        .and("planId").is(oldPlanId),
+                new Update()
+                        .set("planId", newPlan.getId())
+                        .set("planName", newPlan.getName())
+                        .set("planCurrency", newPlan.getCurrency())
+                        .set("endDate", newEndDate)
+                        .set("nextBillingDate", newEndDate));
+        if (subscription == null) {
+            throw new ConflictException("Subscription was modified concurrently, please retry");
+        }
 
-        subscription = subscriptionRepository.save(subscription);
+        quotaService.invalidate(subscription.getId());
+        usageLookupCache.invalidateSubscription(subscription.getId());
         log.info("Subscription {} changed from plan {} to plan {}",
                 subscriptionId, oldPlan != null ? oldPlan.getName() : oldPlanId, newPlan.getName());
 
@@ -253,41 +328,75 @@ public class SubscriptionService {
     }
 
     /**
-     * Toggle auto-renew setting.
+     * Toggle auto-renew setting in one update.
      */
     public SubscriptionResponse toggleAutoRenew(String id, boolean autoRenew) {
-        Subscription subscription = findSubscriptionById(id);
-        subscription.setAutoRenew(autoRenew);
-        subscription = subscriptionRepository.save(subscription);
+        Subscription subscription = transition(Criteria.where("_id").is(id), new Update().set("autoRenew", autoRenew));
+        if (subscription == null) {
+            throw new ResourceNotFoundException("Subscription", "id", id);
+        }
         log.info("Subscription {} auto-renew set to: {}", id, autoRenew);
         return dtoMapper.toSubscriptionResponse(subscription);
     }
 
     /**
      * Renew a subscription.
+     * The renewal only applies if the subscription is still in the status it
+     * was read with, so concurrent renewals cannot both succeed. The period it
+     * replaces is stored with the renewal in the same update and its metered
+     * usage billed afterwards, so that usage is never lost with the old dates.
      */
     public SubscriptionResponse renewSubscription(String id) {
-        Subscription subscription = findSubscriptionById(id);
+        Subscription current = findSubscriptionById(id);
 
-        if (subscription.getStatus() == SubscriptionStatus.ACTIVE) {
+        if (current.getStatus() == SubscriptionStatus.ACTIVE) {
             throw new BadRequestException("Subscription is already active");
         }
 
-        final String planId = subscription.getPlanId();
-        Plan plan = planRepository.findById(planId)
+        final String planId = current.getPlanId();
+        Plan plan = planCatalog.findById(planId)
                 .orElseThrow(() -> new ResourceNotFoundException("Plan", "id", planId));
 
+        if (current.getMeteredPendingEnd() != null) {
+            // An earlier renewal's period is still unbilled; bill it now rather than overwrite it below
+            meteredBillingService.billPartition(List.of(new MeteredBillingService.PeriodClose(current,
+                    current.getMeteredPendingStart(), current.getMeteredPendingEnd())));
+        }
+
         LocalDateTime startDate = LocalDateTime.now();
         LocalDateTime endDate = calculateEndDate(startDate, plan.getBillingCycle());
 
-        subscription.setStatus(SubscriptionStatus.ACTIVE);
-        subscription.setStartDate(startDate);
-        subscription.setEndDate(endDate);
-        subscription.setNextBillingDate(endDate);
-        subscription.setCancelledAt(null);
-        subscription.setCancellationReason(null);
+        Update update = new Update()
+                .set("status", SubscriptionStatus.ACTIVE)
+                .set("startDate", startDate)
+                .set("endDate", endDate)
+                .set("nextBillingDate", endDate)
+                .unset("cancelledAt")
+                .unset("cancellationReason");
+        LocalDateTime unbilledEnd = unbilledMeteredEnd(current, startDate);
+        if (unbilledEnd != null) {
+            update.set("meteredPendingStart", current.getStartDate()).set("meteredPendingEnd", unbilledEnd);
+        }
 
-        subscription = subscriptionRepository.save(subscription);
+        Subscription subscription = transition(
+                Criteria.where("_id").is(id).and("status").is(current.getStatus()).and("meteredPendingEnd").is(null),
+                update);
+        if (subscription == null) {
+            throw new ConflictException("Subscription was modified concurrently, please retry");
+        }
+
+        if (unbilledEnd != null) {
+            try {
+                meteredBillingService.billPartition(List.of(new MeteredBillingService.PeriodClose(subscription,
+                        subscription.getMeteredPendingStart(), subscription.getMeteredPendingEnd())));
+            } catch (Exception e) {
+                // The period is stored on the subscription, so the next metered billing run bills it
+                log.error("Metered billing of the period replaced by renewal {} failed: {}", id, e.getMessage());
+            }
+        }
+
+        quotaService.invalidate(subscription.getId());
+        usageLookupCache.invalidateSubscription(subscription.getId());
         log.info("Subscription renewed: {}", id);
 
         // Generate renewal invoice
@@ -299,15 +408,44 @@ public class SubscriptionService {
         return dtoMapper.toSubscriptionResponse(subscription, plan);
     }
 
+    /**
+     * Apply an update to the subscription matching the criteria in one round
+     * trip, bumping its version so stale copies cannot be saved over it, and
+     * drop the owner's cached active subscription.
+     * Returns the updated subscription, or null if none matched.
+     */
+    private Subscription transition(Criteria criteria, Update update) {
+        update.currentDate("updatedAt").inc("version", 1);
+        Subscription subscription;
+        try {
+            subscription = mongoTemplate.findAndModify(Query.query(criteria), update,
+                    FindAndModifyOptions.options().returnNew(true), Subscription.class);
+        } catch (DuplicateKeyException e) {
+            throw new BadRequestException(ALREADY_SUBSCRIBED);
+        }
+        if (subscription != null) {
+            activeSubscriptionCache.invalidate(subscription.getUserId());
+        }
+        return subscription;
+    }
+
+    /**
+     * End of the period being replaced if its metered usage has not been billed yet, otherwise null.
+     */
+    private LocalDateTime unbilledMeteredEnd(Subscription subscription, LocalDateTime now) {
+        if (subscription.getStartDate() == null || subscription.getEndDate() == null) {
+            return null;
+        }
+        LocalDateTime periodEnd = subscription.getEndDate().isBefore(now) ? subscription.getEndDate() : now;
+        LocalDateTime billedThrough = subscription.getMeteredBilledThrough();
+        return billedThrough != null && !billedThrough.isBefore(periodEnd) ? null : periodEnd;
+    }
+
     /**
      * Calculate end date based on billing cycle.
      */
     private LocalDateTime calculateEndDate(LocalDateTime startDate, BillingCycle billingCycle) {
-        return switch (billingCycle) {
-            case MONTHLY -> startDate.plusMonths(1);
-            case QUARTERLY -> startDate.plusMonths(3);
-            case YEARLY -> startDate.plusYears(1);
-        };
+        return billingCycle.periodEnd(startDate);
     }
 
     /**
@@ -0,0 +1,189 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.model.UsageGranularity;
+import io.micrometer.core.instrument.Gauge;
+import com.project.saasbilling.model.UsageGranularity;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.project.saasbilling.model.UsageGranularity;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind usage aggregator.
+ * Buffers usage events as in-memory counters per
+ * (user, subscription, metric, hour) and per (user, subscription, metric, day)
+ * and periodically flushes them to the hourly and daily usage rollups as
+ * upserted $inc updates. The same buffer
+ * holds rollup updates of stored raw records that failed, so they are
+ * retried on the next flush even when aggregation is disabled.
+ */
+@Service
+@Slf4j
+public class UsageAggregator {
+
+    private final UsageRollupService usageRollupService;
+    private final Timer flushTimer;
+
+    private final Map<BucketKey, BucketCounter> buffer = new ConcurrentHashMap<>();
+    private final AtomicLong lastFlushMillis = new AtomicLong(System.currentTimeMillis());
+
+    @Value("${usage.aggregation.enabled:false}")
+    private boolean enabled;
+
+    public UsageAggregator(UsageRollupService usageRollupService, MeterRegistry meterRegistry) {
+        this.usageRollupService = usageRollupService;
+        this.flushTimer = Timer.builder("usage.aggregation.flush")
+                .description("Time taken to flush buffered usage counters")
+                .register(meterRegistry);
+        Gauge.builder("usage.aggregation.buffer.size", buffer, Map::size)
+                .description("Number of buffered usage counters")
+                .register(meterRegistry);
+        Gauge.builder("usage.aggregation.flush.lag.seconds", lastFlushMillis,
+                        last -> (System.currentTimeMillis() - last.get()) / 1000.0)
+                .description("Seconds since the last successful flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether usage events should be aggregated in memory instead of stored raw.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a usage event to the in-memory buffer. Lock-free on the hot path.
+     */
+    public void record(String userId, String subscriptionId, String metricName, long value,
+            LocalDateTime recordedAt) {
+        LocalDateTime hour = recordedAt.truncatedTo(ChronoUnit.HOURS);
+        add(new BucketKey(userId, subscriptionId, metricName, UsageGranularity.HOURLY, hour), value);
+        add(new BucketKey(userId, subscriptionId, metricName, UsageGranularity.DAILY,
+                hour.truncatedTo(ChronoUnit.DAYS)), value);
+    }
+
+    private void add(BucketKey key, long value) {
+        BucketCounter counter = buffer.computeIfAbsent(key, k -> new BucketCounter());
+        counter.value.add(value);
+        counter.events.add(1);
+    }
+
+    /**
+     * Queue rollup deltas whose update failed, to be retried on the next flush.
+     * These may target past hours, so the counter is updated inside compute to
+     * stay atomic with the eviction in doFlush.
+     */
+    public void requeue(Collection<UsageRollupService.RollupDelta> deltas) {
+        for (UsageRollupService.RollupDelta delta : deltas) {
+            BucketKey key = new BucketKey(delta.userId(), delta.subscriptionId(), delta.metricName(),
+                    delta.granularity(), delta.bucketStart());
+            buffer.compute(key, (k, counter) -> {
+                BucketCounter target = counter != null ? counter : new BucketCounter();
+                target.value.add(delta.value());
+                target.events.add(delta.events());
+                return target;
+            });
+        }
+    }
+
+    /**
+     * Flush buffered counters to MongoDB on a fixed interval.
+     */
+    @Scheduled(fixedDelayString = "${usage.aggregation.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        if (enabled || !buffer.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush remaining counters on graceful shutdown.
+     */
+    @PreDestroy
+    public void shutdownFlush() {
+        if (!buffer.isEmpty()) {
+            log.info("Flushing {} buffered usage counters before shutdown", buffer.size());
+            flush();
+        }
+    }
+
+    /**
+     * Drain all counters and upsert them as $inc updates in one unordered bulk write.
+     */
+    public synchronized void flush() {
+        flushTimer.record(this::doFlush);
+    }
+
+    private void doFlush() {
+        LocalDateTime now = LocalDateTime.now();
+        // Event writers only target the current hour and re-queued deltas are added
+        // inside compute, so buckets that ended before the current hour can be
+        // evicted once drained without racing a concurrent increment.
+        LocalDateTime evictBefore = now.truncatedTo(ChronoUnit.HOURS);
+
+        List<UsageRollupService.RollupDelta> deltas = new ArrayList<>();
+        for (Map.Entry<BucketKey, BucketCounter> entry : buffer.entrySet()) {
+            BucketKey key = entry.getKey();
+            BucketCounter counter = entry.getValue();
+
+            if (key.bucketEnd().isBefore(evictBefore)) {
+                buffer.remove(key, counter);
+            }
+
+            long events = counter.events.sumThenReset();
+            long value = counter.value.sumThenReset();
+            if (events > 0) {
+                deltas.add(new UsageRollupService.RollupDelta(key.userId(), key.subscriptionId(), key.metricName(),
+                        key.granularity(), key.bucketStart(), value, events));
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            lastFlushMillis.set(System.currentTimeMillis());
+            return;
+        }
+
+        try {
+            List<UsageRollupService.RollupDelta> failed = usageRollupService.applyDeltas(deltas);
+            if (failed.isEmpty()) {
+                lastFlushMillis.set(System.currentTimeMillis());
+                log.debug("Flushed {} usage rollup buckets", deltas.size());
+            } else {
+                // Only the failed increments go back; the rest were applied and must not be counted twice
+                requeue(failed);
+                log.warn("Failed to flush {} of {} usage rollup buckets, re-queued", failed.size(), deltas.size());
+            }
+        } catch (Exception e) {
+            // The increments are not idempotent, so a write with an unknown outcome is not repeated
+            log.error("Usage rollup flush of {} buckets had an unknown outcome and was not retried: {}",
+                    deltas.size(), e.getMessage());
+        }
+    }
+
+    private record BucketKey(String userId, String subscriptionId, String metricName,
+            UsageGranularity granularity, LocalDateTime bucketStart) {
+
+        LocalDateTime bucketEnd() {
+            return granularity == UsageGranularity.HOURLY ? bucketStart.plusHours(1) : bucketStart.plusDays(1);
+        }
+    }
+
+    private static final class BucketCounter {
+        private final LongAdder value = new LongAdder();
+        private final LongAdder events = new LongAdder();
+    }
+}
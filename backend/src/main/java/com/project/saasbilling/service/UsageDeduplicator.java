@@ -0,0 +1,188 @@
+package com.project.saasbilling.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.project.saasbilling.model.UsageRecord;
+import com.project.saasbilling.util.TimePartitionedBloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Idempotency-key deduplication for usage events.
+ * A time-partitioned Bloom filter answers "definitely new" for the common
+ * case without touching MongoDB. Possible duplicates are confirmed against
+ * the unique partial index on (userId, idempotencyKey), which also catches
+ * duplicates seen by other nodes or before a restart. Time-series collections
+ * cannot hold that unique index, and in aggregation mode there are no raw
+ * records, so in both modes accepted keys are claimed in a small collection
+ * whose _id is the scoped key and which expires them after the dedup window.
+ */
+@Service
+@Slf4j
+public class UsageDeduplicator {
+
+    private static final String KEYS_COLLECTION = "usage_idempotency_keys";
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final UsageStorageService usageStorageService;
+    private final TimePartitionedBloomFilter filter;
+    private final Counter duplicateCounter;
+    private final Counter falsePositiveCounter;
+    private final Duration window;
+
+    public UsageDeduplicator(MongoTemplate mongoTemplate, UsageStorageService usageStorageService,
+            MeterRegistry meterRegistry,
+            @Value("${usage.dedup.window-minutes:1440}") long windowMinutes,
+            @Value("${usage.dedup.partitions:4}") int partitions,
+            @Value("${usage.dedup.expected-keys:1000000}") long expectedKeys,
+            @Value("${usage.dedup.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.mongoTemplate = mongoTemplate;
+        this.usageStorageService = usageStorageService;
+        this.window = Duration.ofMinutes(windowMinutes);
+        this.filter = new TimePartitionedBloomFilter(windowMinutes * 60_000L, partitions, expectedKeys,
+                falsePositiveRate);
+        this.duplicateCounter = Counter.builder("usage.dedup.duplicates")
+                .description("Usage events dropped as duplicates of an earlier idempotency key")
+                .register(meterRegistry);
+        this.falsePositiveCounter = Counter.builder("usage.dedup.false.positives")
+                .description("Bloom filter hits that turned out not to be duplicates")
+                .register(meterRegistry);
+        Gauge.builder("usage.dedup.filter.bytes", filter, TimePartitionedBloomFilter::sizeInBytes)
+                .description("Memory held by the usage dedup Bloom filter")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ensure the unique index backing duplicate confirmation exists.
+     * Runs after the storage service has created the usage collection.
+     * Without these indexes a "definitely new" answer from the filter has no
+     * backstop, so startup fails if they cannot be built, e.g. because
+     * existing data already holds duplicate keys.
+     */
+    @PostConstruct
+    public void ensureIndex() {
+        try {
+            Index index = new Index()
+                    .named("user_idempotency_key_idx")
+                    .on("userId", Sort.Direction.ASC)
+                    .on("idempotencyKey", Sort.Direction.ASC)
+                    .partial(PartialIndexFilter.of(Criteria.where("idempotencyKey").exists(true)));
+            // Time-series collections do not support unique indexes; confirmation lookups still use it
+            if (!usageStorageService.isTimeSeries()) {
+                index.unique();
+            }
+            mongoTemplate.indexOps(UsageRecord.class).ensureIndex(index);
+            mongoTemplate.indexOps(KEYS_COLLECTION).ensureIndex(new Index()
+                    .named("claimed_ttl_idx")
+                    .on("claimedAt", Sort.Direction.ASC)
+                    .expire(window));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to ensure usage idempotency indexes; resolve duplicate"
+                    + " idempotency keys per user before starting: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether the key may already have been used by this user.
+     * False means the event is definitely new within the dedup window.
+     */
+    public boolean mightBeDuplicate(String userId, String idempotencyKey) {
+        return filter.mightContain(scopedKey(userId, idempotencyKey));
+    }
+
+    /**
+     * Whether keys of stored raw records must be claimed before insert,
+     * because no unique index on the records catches duplicates.
+     */
+    public boolean claimsRawKeys() {
+        return usageStorageService.isTimeSeries();
+    }
+
+    /**
+     * Remember a key once its event has been accepted.
+     */
+    public void remember(String userId, String idempotencyKey) {
+        filter.put(scopedKey(userId, idempotencyKey));
+    }
+
+    /**
+     * Claim idempotency keys for events accepted without a uniquely indexed raw record.
+     * The insert is the duplicate check: keys another request, node or earlier
+     * process already claimed fail on the _id and are left out of the result.
+     *
+     * @return the keys claimed by this call
+     */
+    public Set<String> claim(String userId, Collection<String> idempotencyKeys) {
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(idempotencyKeys));
+        Set<String> claimed = new HashSet<>(keys);
+        if (keys.isEmpty()) {
+            return claimed;
+        }
+
+        Date now = new Date();
+        List<Document> documents = keys.stream()
+                .map(key -> new Document("_id", scopedKey(userId, key)).append("claimedAt", now))
+                .toList();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, KEYS_COLLECTION)
+                    .insert(documents)
+                    .execute();
+        } catch (BulkOperationException e) {
+            boolean failed = false;
+            for (BulkWriteError error : e.getErrors()) {
+                failed |= error.getCode() != DUPLICATE_KEY_ERROR;
+                claimed.remove(keys.get(error.getIndex()));
+            }
+            if (failed) {
+                // The caller rejects the events, so a retry must not find their keys claimed
+                release(userId, claimed);
+                throw e;
+            }
+        }
+        keys.stream().filter(key -> !claimed.contains(key)).forEach(key -> duplicateCounter.increment());
+        return claimed;
+    }
+
+    /**
+     * Give back keys claimed for events that were not recorded after all.
+     */
+    public void release(String userId, Collection<String> idempotencyKeys) {
+        if (idempotencyKeys.isEmpty()) {
+            return;
+        }
+        List<String> ids = idempotencyKeys.stream().map(key -> scopedKey(userId, key)).toList();
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), KEYS_COLLECTION);
+    }
+
+    /**
+     * Record the outcome of confirming a possible duplicate.
+     */
+    public void recordConfirmation(boolean duplicate) {
+        if (duplicate) {
+            duplicateCounter.increment();
+        } else {
+            falsePositiveCounter.increment();
+        }
+    }
+
+    private String scopedKey(String userId, String idempotencyKey) {
+        return userId + ':' + idempotencyKey;
+    }
+}
@@ -0,0 +1,145 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.exception.ResourceNotFoundException;
+import com.project.saasbilling.model.Subscription;
+import com.project.saasbilling.model.User;
+import com.project.saasbilling.repository.SubscriptionRepository;
+import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.BoundedTtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * In-process cache of the user and subscription fields copied onto usage
+ * records, so the usage hot path does not read both documents on every write.
+ * Entries are invalidated when the owning service mutates the source document
+ * and otherwise expire after a short TTL, which bounds staleness for changes
+ * made on other nodes.
+ */
+@Service
+public class UsageLookupCache {
+
+    /**
+     * Denormalization snapshot of a user.
+     */
+    public record UserSnapshot(String id, String email) {
+    }
+
+    /**
+     * Denormalization and quota snapshot of a subscription.
+     */
+    public record SubscriptionSnapshot(String id, String userId, String planId, String planName,
+            LocalDateTime startDate, LocalDateTime endDate) {
+    }
+
+    private final UserRepository userRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final BoundedTtlCache<String, UserSnapshot> users;
+    private final BoundedTtlCache<String, SubscriptionSnapshot> subscriptions;
+
+    public UsageLookupCache(UserRepository userRepository, SubscriptionRepository subscriptionRepository,
+            MeterRegistry meterRegistry,
+            @Value("${usage.lookup-cache.max-size:10000}") int maxSize,
+            @Value("${usage.lookup-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.users = new BoundedTtlCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+        this.subscriptions = new BoundedTtlCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+        registerMetrics(meterRegistry, "users", users);
+        registerMetrics(meterRegistry, "subscriptions", subscriptions);
+    }
+
+    /**
+     * Get a user snapshot, loading it on a miss.
+     */
+    public UserSnapshot getUser(String userId) {
+        UserSnapshot snapshot = users.get(userId, id -> userRepository.findById(id)
+                .map(this::toSnapshot)
+                .orElse(null));
+        if (snapshot == null) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get a subscription snapshot, loading it on a miss.
+     */
+    public SubscriptionSnapshot getSubscription(String subscriptionId) {
+        SubscriptionSnapshot snapshot = subscriptions.get(subscriptionId,
+                id -> subscriptionRepository.findById(id)
+                        .map(this::toSnapshot)
+                        .orElse(null));
+        if (snapshot == null) {
+            throw new ResourceNotFoundException("Subscription", "id", subscriptionId);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get snapshots for several subscriptions, loading all misses with one query.
+     * Unknown ids are absent from the result.
+     */
+    public Map<String, SubscriptionSnapshot> getSubscriptions(Collection<String> subscriptionIds) {
+        Map<String, SubscriptionSnapshot> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : subscriptionIds) {
+            SubscriptionSnapshot snapshot = subscriptions.getIfPresent(id);
+            if (snapshot != null) {
+                result.put(id, snapshot);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            subscriptionRepository.findAllById(missing).forEach(subscription -> {
+                SubscriptionSnapshot snapshot = toSnapshot(subscription);
+                subscriptions.put(snapshot.id(), snapshot);
+                result.put(snapshot.id(), snapshot);
+            });
+        }
+        return result;
+    }
+
+    public void invalidateUser(String userId) {
+        users.invalidate(userId);
+    }
+
+    public void invalidateSubscription(String subscriptionId) {
+        subscriptions.invalidate(subscriptionId);
+    }
+
+    private UserSnapshot toSnapshot(User user) {
+        return new UserSnapshot(user.getId(), user.getEmail());
+    }
+
+    private SubscriptionSnapshot toSnapshot(Subscription subscription) {
+        return new SubscriptionSnapshot(subscription.getId(), subscription.getUserId(), subscription.getPlanId(),
+                subscription.getPlanName(), subscription.getStartDate(), subscription.getEndDate());
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry, String name, BoundedTtlCache<?, ?> cache) {
+        FunctionCounter.builder("usage.lookup.cache.gets", cache, BoundedTtlCache::hitCount)
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("usage.lookup.cache.gets", cache, BoundedTtlCache::missCount)
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("usage.lookup.cache.hit.ratio", cache, BoundedTtlCache::hitRatio)
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("usage.lookup.cache.size", cache, BoundedTtlCache::size)
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,323 @@
+package com.project.saasbilling.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.project.saasbilling.model.UsageGranularity;
+import com.project.saasbilling.model.UsageRecord;
+import com.project.saasbilling.model.UsageRollup;
+import com.project.saasbilling.repository.UsageRecordRepository;
+import com.project.saasbilling.repository.UsageRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Service maintaining and reading the hourly/daily usage rollup collection.
+ * Summary queries read O(buckets) rollup documents instead of every raw
+ * usage record; raw records remain available for drill-down.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UsageRollupService {
+
+    private final UsageRollupRepository usageRollupRepository;
+    private final UsageRecordRepository usageRecordRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${usage.aggregation.enabled:false}")
+    private boolean aggregationEnabled;
+
+    // Buckets that ended less than this long ago may still receive live or retried increments
+    @Value("${usage.rollup.rebuild.settle-minutes:60}")
+    private long rebuildSettleMinutes;
+
+    /**
+     * A usage increment for one (user, subscription, metric, granularity, bucket start) bucket.
+     */
+    public record RollupDelta(String userId, String subscriptionId, String metricName,
+            UsageGranularity granularity, LocalDateTime bucketStart, long value, long events) {
+    }
+
+    /**
+     * A subscription billing period to summarize.
+     */
+    public record SubscriptionPeriod(String subscriptionId, LocalDateTime start, LocalDateTime end) {
+    }
+
+    /**
+     * Fold raw usage records into hourly and daily deltas.
+     */
+    public List<RollupDelta> toDeltas(Collection<UsageRecord> records) {
+        Map<List<Object>, long[]> totals = new LinkedHashMap<>();
+        for (UsageRecord record : records) {
+            LocalDateTime hour = record.getRecordedAt().truncatedTo(ChronoUnit.HOURS);
+            add(totals, record, UsageGranularity.HOURLY, hour);
+            add(totals, record, UsageGranularity.DAILY, hour.truncatedTo(ChronoUnit.DAYS));
+        }
+
+        List<RollupDelta> deltas = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> deltas.add(new RollupDelta((String) key.get(0), (String) key.get(1),
+                (String) key.get(2), (UsageGranularity) key.get(3), (LocalDateTime) key.get(4),
+                total[0], total[1])));
+        return deltas;
+    }
+
+    private void add(Map<List<Object>, long[]> totals, UsageRecord record, UsageGranularity granularity,
+            LocalDateTime bucketStart) {
+        List<Object> key = Arrays.asList(record.getUserId(), record.getSubscriptionId(),
+                record.getMetricName(), granularity, bucketStart);
+        long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+        total[0] += record.getUsageValue();
+        total[1]++;
+    }
+
+    /**
+     * Apply deltas to their buckets with one unordered bulk upsert.
+     * The $inc updates are not idempotent, so on a partial failure only the
+     * deltas whose operation failed are returned for a retry; all others were
+     * applied. Any other error leaves the outcome unknown and is thrown.
+     *
+     * @return the deltas that were not applied
+     */
+    public List<RollupDelta> applyDeltas(List<RollupDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UsageRollup.class);
+        for (RollupDelta delta : deltas) {
+            bulk.upsert(bucketQuery(delta), new Update()
+                    .inc("totalValue", delta.value())
+                    .inc("eventCount", delta.events())
+                    .set("lastUpdatedAt", now));
+        }
+        try {
+            bulk.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            // Operations map one-to-one to deltas, e.g. an E11000 from two nodes upserting a new bucket
+            List<RollupDelta> failed = new ArrayList<>(e.getErrors().size());
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(deltas.get(error.getIndex()));
+            }
+            return failed;
+        }
+    }
+
+    /**
+     * Sum usage per metric for a user in [start, end), optionally for a single metric.
+     * Whole days come from daily buckets, whole hours from hourly buckets and
+     * partial hours at the edges from raw records.
+     */
+    public Map<String, Long> summarize(String userId, String metricName, LocalDateTime start, LocalDateTime end) {
+        Map<String, Long> summary = new HashMap<>();
+        if (!start.isBefore(end)) {
+            return summary;
+        }
+
+        // In aggregation mode no raw records exist, so widen to whole hours instead
+        LocalDateTime startHour = aggregationEnabled ? start.truncatedTo(ChronoUnit.HOURS) : ceilHour(start);
+        LocalDateTime endHour = aggregationEnabled ? ceilHour(end) : end.truncatedTo(ChronoUnit.HOURS);
+
+        if (!startHour.isBefore(endHour)) {
+            addRaw(summary, userId, metricName, start, end);
+            return summary;
+        }
+
+        LocalDateTime startDay = ceilDay(startHour);
+        LocalDateTime endDay = endHour.truncatedTo(ChronoUnit.DAYS);
+
+        if (startDay.isBefore(endDay)) {
+            addBuckets(summary, userId, metricName, UsageGranularity.DAILY, startDay, endDay);
+            addBuckets(summary, userId, metricName, UsageGranularity.HOURLY, startHour, startDay);
+            addBuckets(summary, userId, metricName, UsageGranularity.HOURLY, endDay, endHour);
+        } else {
+            addBuckets(summary, userId, metricName, UsageGranularity.HOURLY, startHour, endHour);
+        }
+
+        if (!aggregationEnabled) {
+            addRaw(summary, userId, metricName, start, startHour);
+            addRaw(summary, userId, metricName, endHour, end);
+        }
+        return summary;
+    }
+
+    /**
+     * Sum usage per metric for a subscription since the start of the given hour.
+     * Hour precision is enough for quota reconciliation.
+     */
+    public Map<String, Long> summarizeSubscription(String subscriptionId, LocalDateTime start) {
+        Map<String, Long> summary = new HashMap<>();
+        usageRollupRepository.findBySubscriptionIdAndGranularityAndBucketStartGreaterThanEqual(
+                        subscriptionId, UsageGranularity.HOURLY, start.truncatedTo(ChronoUnit.HOURS))
+                .forEach(rollup -> summary.merge(rollup.getMetricName(), rollup.getTotalValue(), Long::sum));
+        return summary;
+    }
+
+    /**
+     * Sum usage per subscription and metric for many periods with one aggregation.
+     * Period bounds are truncated to the hour; whole days come from daily
+     * buckets and the remaining hours from hourly buckets.
+     *
+     * @return subscriptionId to (metricName to total)
+     */
+    public Map<String, Map<String, Long>> summarizePeriods(Collection<SubscriptionPeriod> periods) {
+        List<Criteria> clauses = new ArrayList<>();
+        for (SubscriptionPeriod period : periods) {
+            LocalDateTime start = period.start().truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime end = period.end().truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime startDay = ceilDay(start);
+            LocalDateTime endDay = end.truncatedTo(ChronoUnit.DAYS);
+
+            if (startDay.isBefore(endDay)) {
+                addPeriodClause(clauses, period.subscriptionId(), UsageGranularity.HOURLY, start, startDay);
+                addPeriodClause(clauses, period.subscriptionId(), UsageGranularity.DAILY, startDay, endDay);
+                addPeriodClause(clauses, period.subscriptionId(), UsageGranularity.HOURLY, endDay, end);
+            } else {
+                addPeriodClause(clauses, period.subscriptionId(), UsageGranularity.HOURLY, start, end);
+            }
+        }
+
+        Map<String, Map<String, Long>> totals = new HashMap<>();
+        if (clauses.isEmpty()) {
+            return totals;
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(new Criteria().orOperator(clauses)),
+                Aggregation.group("subscriptionId", "metricName").sum("totalValue").as("total"));
+        for (Document result : mongoTemplate.aggregate(aggregation, UsageRollup.class, Document.class)) {
+            Document id = result.get("_id", Document.class);
+            totals.computeIfAbsent(id.getString("subscriptionId"), k -> new HashMap<>())
+                    .merge(id.getString("metricName"), ((Number) result.get("total")).longValue(), Long::sum);
+        }
+        return totals;
+    }
+
+    /**
+     * Rebuild closed rollup buckets from raw usage records.
+     * Used to backfill data recorded before rollups existed or to repair drift.
+     * Only buckets that ended at least usage.rollup.rebuild.settle-minutes ago
+     * are replaced, so increments from live ingest and queued retries are not
+     * overwritten; open buckets keep being maintained by those increments.
+     */
+    public void rebuildFromRawRecords() {
+        mongoTemplate.indexOps(UsageRollup.class).ensureIndex(new Index()
+                .named("rollup_bucket_idx")
+                .on("userId", Sort.Direction.ASC)
+                .on("subscriptionId", Sort.Direction.ASC)
+                .on("metricName", Sort.Direction.ASC)
+                .on("granularity", Sort.Direction.ASC)
+                .on("bucketStart", Sort.Direction.ASC)
+                .unique());
+
+        LocalDateTime settled = LocalDateTime.now().minusMinutes(rebuildSettleMinutes);
+        for (UsageGranularity granularity : UsageGranularity.values()) {
+            String unit = granularity == UsageGranularity.HOURLY ? "hour" : "day";
+            LocalDateTime closedBefore = settled.truncatedTo(
+                    granularity == UsageGranularity.HOURLY ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+            AggregationOperation group = context -> new Document("$group", new Document("_id", new Document()
+                    .append("userId", "$userId")
+                    .append("subscriptionId", "$subscriptionId")
+                    .append("metricName", "$metricName")
+                    .append("bucketStart", new Document("$dateTrunc", new Document("date", "$recordedAt")
+                            .append("unit", unit)
+                            .append("timezone", ZoneId.systemDefault().getId()))))
+                    .append("totalValue", new Document("$sum", "$usageValue"))
+                    .append("eventCount", new Document("$sum", 1)));
+            AggregationOperation project = context -> new Document("$project", new Document("_id", 0)
+                    .append("userId", "$_id.userId")
+                    .append("subscriptionId", "$_id.subscriptionId")
+                    .append("metricName", "$_id.metricName")
+                    .append("granularity", new Document("$literal", granularity.name()))
+                    .append("bucketStart", "$_id.bucketStart")
+                    .append("totalValue", 1)
+                    .append("eventCount", 1)
+                    .append("lastUpdatedAt", "$$NOW"));
+            AggregationOperation merge = context -> new Document("$merge", new Document("into", "usage_rollups")
+                    .append("on", List.of("userId", "subscriptionId", "metricName", "granularity", "bucketStart"))
+                    .append("whenMatched", "replace")
+                    .append("whenNotMatched", "insert"));
+
+            mongoTemplate.aggregate(Aggregation.newAggregation(
+                            Aggregation.match(Criteria.where("recordedAt").lt(closedBefore)), group, project, merge)
+                    .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build()),
+                    UsageRecord.class, Document.class);
+            log.info("Rebuilt {} usage rollups before {} from raw records", granularity, closedBefore);
+        }
+    }
+
+    private void addBuckets(Map<String, Long> summary, String userId, String metricName,
+            UsageGranularity granularity, LocalDateTime start, LocalDateTime end) {
+        if (!start.isBefore(end)) {
+            return;
+        }
+        List<UsageRollup> rollups = metricName == null
+                ? usageRollupRepository.findByUserIdAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThan(
+                        userId, granularity, start, end)
+                : usageRollupRepository
+                        .findByUserIdAndMetricNameAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThan(
+                                userId, metricName, granularity, start, end);
+        for (UsageRollup rollup : rollups) {
+            summary.merge(rollup.getMetricName(), rollup.getTotalValue(), Long::sum);
+        }
+    }
+
+    private void addRaw(Map<String, Long> summary, String userId, String metricName,
+            LocalDateTime start, LocalDateTime end) {
+        if (!start.isBefore(end)) {
+            return;
+        }
+        if (metricName != null) {
+            summary.merge(metricName, usageRecordRepository.sumUsage(userId, metricName, start, end), Long::sum);
+        } else {
+            usageRecordRepository.sumUsageByMetric(userId, start, end)
+                    .forEach((metric, total) -> summary.merge(metric, total, Long::sum));
+        }
+    }
+
+    private void addPeriodClause(List<Criteria> clauses, String subscriptionId, UsageGranularity granularity,
+            LocalDateTime start, LocalDateTime end) {
+        if (start.isBefore(end)) {
+            clauses.add(Criteria.where("subscriptionId").is(subscriptionId)
+                    .and("granularity").is(granularity)
+                    .and("bucketStart").gte(start).lt(end));
+        }
+    }
+
+    private Query bucketQuery(RollupDelta delta) {
+        return Query.query(Criteria.where("userId").is(delta.userId())
+                .and("subscriptionId").is(delta.subscriptionId())
+                .and("metricName").is(delta.metricName())
+                .and("granularity").is(delta.granularity())
+                .and("bucketStart").is(delta.bucketStart()));
+    }
+
+    private LocalDateTime ceilHour(LocalDateTime time) {
+        LocalDateTime floor = time.truncatedTo(ChronoUnit.HOURS);
+        return floor.equals(time) ? floor : floor.plusHours(1);
+    }
+
+    private LocalDateTime ceilDay(LocalDateTime time) {
+        LocalDateTime floor = time.truncatedTo(ChronoUnit.DAYS);
+        return floor.equals(time) ? floor : floor.plusDays(1);
+    }
+}
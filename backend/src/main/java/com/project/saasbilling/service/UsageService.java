@@ -1,23 +1,47 @@
 package com.project.saasbilling.service;
 
+import com.mongodb.bulk.BulkWriteError;
+import com.project.saasbilling.dto.CursorPageResponse;
+import com.project.saasbilling.dto.DailyUsageResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.project.saasbilling.dto.PageResponse;
+import com.project.saasbilling.dto.UsageBatchRequest;
+import com.project.saasbilling.dto.UsageBatchResponse;
+import com.project.saasbilling.dto.UsageExportFormat;
 import com.project.saasbilling.dto.UsageRequest;
 import com.project.saasbilling.dto.UsageResponse;
+import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.exception.QuotaExceededException;
 import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.*;
-import com.project.saasbilling.repository.SubscriptionRepository;
 import com.project.saasbilling.repository.UsageRecordRepository;
-import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.CursorPager;
 import com.project.saasbilling.util.DtoMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for usage tracking.
@@ -29,47 +53,466 @@ import java.util.stream.Collectors;
 public class UsageService {
 
     private final UsageRecordRepository usageRecordRepository;
-    private final SubscriptionRepository subscriptionRepository;
-    private final UserRepository userRepository;
+    private final UsageAggregator usageAggregator;
+    private final UsageRollupService usageRollupService;
+    private final QuotaService quotaService;
+    private final UsageLookupCache usageLookupCache;
+    private final UsageDeduplicator usageDeduplicator;
+    private final MongoTemplate mongoTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
     private final DtoMapper dtoMapper;
+    private final CursorPager cursorPager;
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    @Value("${usage.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${usage.export.batch-size:1000}")
+    private int exportBatchSize;
 
     /**
      * Record usage for a user.
      */
     public UsageResponse recordUsage(String userId, UsageRequest request) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
+        UsageLookupCache.UserSnapshot user = usageLookupCache.getUser(userId);
 
-        Subscription subscription = null;
+        UsageLookupCache.SubscriptionSnapshot subscription = null;
         String planName = null;
 
         if (request.getSubscriptionId() != null) {
-            subscription = subscriptionRepository.findById(request.getSubscriptionId())
-                    .orElseThrow(
-                            () -> new ResourceNotFoundException("Subscription", "id", request.getSubscriptionId()));
-            planName = subscription.getPlanName();
+            subscription = usageLookupCache.getSubscription(request.getSubscriptionId());
+            // Quota, rollups and overage are keyed by subscription, so another tenant's id must not be usable
+            if (!userId.equals(subscription.userId())) {
+                throw new ResourceNotFoundException("Subscription", "id", request.getSubscriptionId());
+            }
+            planName = subscription.planName();
         }
 
         UsageRecord usage = UsageRecord.builder()
                 .userId(userId)
                 .subscriptionId(request.getSubscriptionId())
                 // Denormalized fields
-                .userEmail(user.getEmail())
+                .userEmail(user.email())
                 .planName(planName)
                 .metricName(request.getMetricName())
                 .usageValue(request.getUsageValue())
                 .unit(request.getUnit())
                 .description(request.getDescription())
+                .idempotencyKey(request.getIdempotencyKey())
                 .recordedAt(LocalDateTime.now())
                 .build();
 
-        usage = usageRecordRepository.save(usage);
+        String idempotencyKey = request.getIdempotencyKey();
+        if (idempotencyKey != null && !usageAggregator.isEnabled()
+                && usageDeduplicator.mightBeDuplicate(userId, idempotencyKey)) {
+            Optional<UsageRecord> existing = usageRecordRepository.findFirstByUserIdAndIdempotencyKey(userId,
+                    idempotencyKey);
+            usageDeduplicator.recordConfirmation(existing.isPresent());
+            if (existing.isPresent()) {
+                log.info("Duplicate usage event ignored for user: {}, key: {}", userId, idempotencyKey);
+                return dtoMapper.toUsageResponse(existing.get());
+            }
+        }
+
+        boolean overQuota = quotaService.consume(subscription, request.getMetricName(), request.getUsageValue());
+        if (overQuota) {
+            usage.setOverQuota(true);
+        }
+
+        if (usageAggregator.isEnabled()) {
+            // No raw records to confirm against in aggregation mode, so claiming the key is the check
+            boolean duplicate;
+            try {
+                duplicate = idempotencyKey != null
+                        && usageDeduplicator.claim(userId, List.of(idempotencyKey)).isEmpty();
+            } catch (RuntimeException e) {
+                quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+                throw e;
+            }
+            if (duplicate) {
+                quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+                log.info("Duplicate usage event ignored for user: {}, key: {}", userId, idempotencyKey);
+                return dtoMapper.toUsageResponse(usage);
+            }
+
+            // Aggregation mode: buffer in memory, flushed later as rollups
+            usageAggregator.record(userId, usage.getSubscriptionId(), usage.getMetricName(),
+                    usage.getUsageValue(), usage.getRecordedAt());
+            rememberIdempotencyKey(usage);
+            return dtoMapper.toUsageResponse(usage);
+        }
+
+        // Without a unique index on the records, claiming the key is the check
+        boolean claimed = idempotencyKey != null && usageDeduplicator.claimsRawKeys();
+        if (claimed) {
+            boolean duplicate;
+            try {
+                duplicate = usageDeduplicator.claim(userId, List.of(idempotencyKey)).isEmpty();
+            } catch (RuntimeException e) {
+                quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+                throw e;
+            }
+            if (duplicate) {
+                quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+                log.info("Duplicate usage event ignored for user: {}, key: {}", userId, idempotencyKey);
+                // The first request may still be storing its record
+                return dtoMapper.toUsageResponse(usageRecordRepository
+                        .findFirstByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                        .orElse(usage));
+            }
+        }
+
+        try {
+            usage = usageRecordRepository.save(usage);
+        } catch (DuplicateKeyException e) {
+            quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+            if (idempotencyKey == null) {
+                throw e;
+            }
+            // Key accepted by another node or before a restart
+            UsageRecord existing = usageRecordRepository.findFirstByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                    .orElseThrow(() -> e);
+            usageDeduplicator.recordConfirmation(true);
+            rememberIdempotencyKey(existing);
+            return dtoMapper.toUsageResponse(existing);
+        } catch (RuntimeException e) {
+            quotaService.refund(subscription, request.getMetricName(), request.getUsageValue(), overQuota);
+            if (claimed) {
+                // The event was not stored, so a retry must not find its key claimed
+                usageDeduplicator.release(userId, List.of(idempotencyKey));
+            }
+            throw e;
+        }
+        rememberIdempotencyKey(usage);
+        updateRollups(List.of(usage));
         log.info("Usage recorded for user: {}, metric: {}, value: {}", userId, request.getMetricName(),
                 request.getUsageValue());
 
         return dtoMapper.toUsageResponse(usage);
     }
 
+    /**
+     * Record a batch of usage events for a user.
+     * User and subscription lookups are resolved once per batch and records are
+     * persisted with a single unordered bulk insert, so a failing item does not
+     * fail the rest of the batch.
+     */
+    public UsageBatchResponse recordUsageBatch(String userId, UsageBatchRequest request) {
+        List<UsageRequest> items = request.getRecords();
+        if (items.size() > maxBatchSize) {
+            throw new BadRequestException("Batch size exceeds maximum of " + maxBatchSize + " records");
+        }
+
+        UsageLookupCache.UserSnapshot user = usageLookupCache.getUser(userId);
+
+        Set<String> subscriptionIds = items.stream()
+                .filter(Objects::nonNull)
+                .map(UsageRequest::getSubscriptionId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        // Subscriptions of other users are treated as not found
+        Map<String, UsageLookupCache.SubscriptionSnapshot> subscriptions =
+                usageLookupCache.getSubscriptions(subscriptionIds).entrySet().stream()
+                        .filter(entry -> userId.equals(entry.getValue().userId()))
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        // Only possible duplicates are confirmed, with one query for the whole batch
+        Set<String> candidateKeys = items.stream()
+                .filter(item -> item != null && item.getIdempotencyKey() != null && !usageAggregator.isEnabled())
+                .map(UsageRequest::getIdempotencyKey)
+                .filter(key -> usageDeduplicator.mightBeDuplicate(userId, key))
+                .collect(Collectors.toSet());
+        Map<String, String> existingIds = findExistingIds(userId, candidateKeys);
+        Map<String, String> batchKeyIds = new HashMap<>();
+
+        UsageBatchResponse.ItemResult[] results = new UsageBatchResponse.ItemResult[items.size()];
+        List<UsageRecord> records = new ArrayList<>(items.size());
+        List<Integer> recordIndexes = new ArrayList<>(items.size());
+        LocalDateTime recordedAt = LocalDateTime.now();
+
+        for (int i = 0; i < items.size(); i++) {
+            UsageRequest item = items.get(i);
+            String error = validateBatchItem(item, subscriptions);
+            if (error != null) {
+                results[i] = batchItemResult(i, null, error);
+                continue;
+            }
+
+            String key = item.getIdempotencyKey();
+            if (key != null && (existingIds.containsKey(key) || batchKeyIds.containsKey(key))) {
+                results[i] = duplicateItemResult(i,
+                        existingIds.containsKey(key) ? existingIds.get(key) : batchKeyIds.get(key));
+                continue;
+            }
+
+            UsageLookupCache.SubscriptionSnapshot subscription = item.getSubscriptionId() != null
+                    ? subscriptions.get(item.getSubscriptionId())
+                    : null;
+
+            boolean overQuota;
+            try {
+                overQuota = quotaService.consume(subscription, item.getMetricName(), item.getUsageValue());
+            } catch (QuotaExceededException e) {
+                results[i] = batchItemResult(i, null, e.getMessage());
+                continue;
+            }
+
+            UsageRecord record = UsageRecord.builder()
+                    .id(new ObjectId().toHexString())
+                    .userId(userId)
+                    .subscriptionId(item.getSubscriptionId())
+                    // Denormalized fields
+                    .userEmail(user.email())
+                    .planName(subscription != null ? subscription.planName() : null)
+                    .metricName(item.getMetricName())
+                    .usageValue(item.getUsageValue())
+                    .unit(item.getUnit())
+                    .description(item.getDescription())
+                    .idempotencyKey(key)
+                    .recordedAt(recordedAt)
+                    .overQuota(overQuota ? Boolean.TRUE : null)
+                    .build();
+            records.add(record);
+            recordIndexes.add(i);
+            if (key != null) {
+                batchKeyIds.put(key, usageAggregator.isEnabled() ? null : record.getId());
+            }
+        }
+
+        // Without a unique index on the records, claiming the keys is the check
+        boolean claimRaw = !records.isEmpty() && !usageAggregator.isEnabled() && usageDeduplicator.claimsRawKeys();
+        Set<String> rawClaims = claimRaw
+                ? claimRawKeys(userId, records, recordIndexes, results, subscriptions)
+                : Set.of();
+
+        if (!records.isEmpty() && usageAggregator.isEnabled()) {
+            Set<String> keys = records.stream()
+                    .map(UsageRecord::getIdempotencyKey)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            Set<String> claimed;
+            try {
+                claimed = usageDeduplicator.claim(userId, keys);
+            } catch (RuntimeException e) {
+                records.forEach(record -> refundQuota(record, subscriptions));
+                throw e;
+            }
+
+            for (int j = 0; j < records.size(); j++) {
+                UsageRecord record = records.get(j);
+                if (record.getIdempotencyKey() != null && !claimed.contains(record.getIdempotencyKey())) {
+                    // Key accepted earlier, by another node or before a restart
+                    refundQuota(record, subscriptions);
+                    results[recordIndexes.get(j)] = duplicateItemResult(recordIndexes.get(j), null);
+                    continue;
+                }
+                usageAggregator.record(userId, record.getSubscriptionId(), record.getMetricName(),
+                        record.getUsageValue(), record.getRecordedAt());
+                rememberIdempotencyKey(record);
+                results[recordIndexes.get(j)] = batchItemResult(recordIndexes.get(j), null, null);
+            }
+        } else if (!records.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UsageRecord.class)
+                        .insert(records)
+                        .execute();
+            } catch (BulkOperationException e) {
+                Map<Integer, String> lateDuplicates = new HashMap<>();
+                for (BulkWriteError writeError : e.getErrors()) {
+                    int index = recordIndexes.get(writeError.getIndex());
+                    String key = records.get(writeError.getIndex()).getIdempotencyKey();
+                    if (writeError.getCode() == DUPLICATE_KEY_ERROR && key != null) {
+                        // Key accepted by another node or before a restart
+                        lateDuplicates.put(index, key);
+                    } else {
+                        results[index] = batchItemResult(index, null, writeError.getMessage());
+                    }
+                }
+                if (!lateDuplicates.isEmpty()) {
+                    Map<String, String> ids = findExistingIds(userId, new HashSet<>(lateDuplicates.values()));
+                    lateDuplicates.forEach((index, key) -> results[index] = duplicateItemResult(index, ids.get(key)));
+                }
+            } catch (RuntimeException e) {
+                records.forEach(record -> refundQuota(record, subscriptions));
+                usageDeduplicator.release(userId, rawClaims);
+                throw e;
+            }
+
+            List<UsageRecord> inserted = new ArrayList<>(records.size());
+            List<String> unstoredClaims = new ArrayList<>();
+            for (int j = 0; j < records.size(); j++) {
+                UsageRecord record = records.get(j);
+                if (results[recordIndexes.get(j)] == null) {
+                    inserted.add(record);
+                    rememberIdempotencyKey(record);
+                } else {
+                    // Failed or late duplicate: only stored records count against the quota
+                    refundQuota(record, subscriptions);
+                    if (record.getIdempotencyKey() != null && rawClaims.contains(record.getIdempotencyKey())) {
+                        unstoredClaims.add(record.getIdempotencyKey());
+                    }
+                }
+            }
+            usageDeduplicator.release(userId, unstoredClaims);
+            updateRollups(inserted);
+
+            for (int j = 0; j < records.size(); j++) {
+                int index = recordIndexes.get(j);
+                if (results[index] == null) {
+                    results[index] = batchItemResult(index, records.get(j).getId(), null);
+                }
+            }
+        }
+
+        int accepted = (int) Arrays.stream(results).filter(UsageBatchResponse.ItemResult::isSuccess).count();
+        log.info("Usage batch recorded for user: {}, received: {}, accepted: {}", userId, items.size(), accepted);
+
+        return UsageBatchResponse.builder()
+                .received(items.size())
+                .accepted(accepted)
+                .rejected(items.size() - accepted)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    /**
+     * Maintain hourly/daily rollups for newly stored raw records.
+     * Metered billing reads the rollups, so deltas whose update failed are
+     * queued on the aggregator and retried on its next flush rather than
+     * failing ingest. If the outcome is unknown nothing is re-applied, since
+     * the increments are not idempotent; the rollup rebuild repairs those buckets.
+     */
+    private void updateRollups(List<UsageRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            List<UsageRollupService.RollupDelta> failed =
+                    usageRollupService.applyDeltas(usageRollupService.toDeltas(records));
+            if (!failed.isEmpty()) {
+                usageAggregator.requeue(failed);
+                log.warn("Failed to update {} usage rollup buckets, queued for retry", failed.size());
+            }
+        } catch (Exception e) {
+            log.error("Usage rollup update for {} records had an unknown outcome, rebuild rollups to repair: {}",
+                    records.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Validate a single batch item, returning an error message or null if valid.
+     */
+    private String validateBatchItem(UsageRequest item,
+            Map<String, UsageLookupCache.SubscriptionSnapshot> subscriptions) {
+        if (item == null) {
+            return "Usage record is required";
+        }
+
+        Set<ConstraintViolation<UsageRequest>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .collect(Collectors.joining(", "));
+        }
+
+        if (item.getSubscriptionId() != null && !subscriptions.containsKey(item.getSubscriptionId())) {
+            return String.format("Subscription not found with id: '%s'", item.getSubscriptionId());
+        }
+        return null;
+    }
+
+    private UsageBatchResponse.ItemResult duplicateItemResult(int index, String existingId) {
+        return UsageBatchResponse.ItemResult.builder()
+                .index(index)
+                .success(true)
+                .id(existingId)
+                .duplicate(true)
+                .build();
+    }
+
+    /**
+     * Look up ids of raw records already stored under the given idempotency keys.
+     */
+    /**
+     * Claim the idempotency keys of records about to be stored. Records whose
+     * key was already claimed are reported as duplicates and removed from the
+     * records to insert.
+     *
+     * @return the keys claimed by this batch
+     */
+    private Set<String> claimRawKeys(String userId, List<UsageRecord> records, List<Integer> recordIndexes,
+            UsageBatchResponse.ItemResult[] results,
+            Map<String, UsageLookupCache.SubscriptionSnapshot> subscriptions) {
+        Set<String> keys = records.stream()
+                .map(UsageRecord::getIdempotencyKey)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<String> claimed;
+        try {
+            claimed = usageDeduplicator.claim(userId, keys);
+        } catch (RuntimeException e) {
+            records.forEach(record -> refundQuota(record, subscriptions));
+            throw e;
+        }
+        if (claimed.size() == keys.size()) {
+            return claimed;
+        }
+
+        Set<String> duplicates = new HashSet<>(keys);
+        duplicates.removeAll(claimed);
+        Map<String, String> existingIds = new HashMap<>();
+        usageRecordRepository.findByUserIdAndIdempotencyKeyIn(userId, duplicates)
+                .forEach(record -> existingIds.put(record.getIdempotencyKey(), record.getId()));
+        for (int j = records.size() - 1; j >= 0; j--) {
+            UsageRecord record = records.get(j);
+            if (record.getIdempotencyKey() != null && !claimed.contains(record.getIdempotencyKey())) {
+                // Key accepted earlier, by another request, node or before a restart
+                refundQuota(record, subscriptions);
+                int index = recordIndexes.get(j);
+                results[index] = duplicateItemResult(index, existingIds.get(record.getIdempotencyKey()));
+                records.remove(j);
+                recordIndexes.remove(j);
+            }
+        }
+        return claimed;
+    }
+
+    private Map<String, String> findExistingIds(String userId, Set<String> keys) {
+        Map<String, String> existingIds = new HashMap<>();
+        if (keys.isEmpty()) {
+            return existingIds;
+        }
+        usageRecordRepository.findByUserIdAndIdempotencyKeyIn(userId, keys)
+                .forEach(record -> existingIds.put(record.getIdempotencyKey(), record.getId()));
+        keys.forEach(key -> usageDeduplicator.recordConfirmation(existingIds.containsKey(key)));
+        return existingIds;
+    }
+
+    private void refundQuota(UsageRecord record, Map<String, UsageLookupCache.SubscriptionSnapshot> subscriptions) {
+        UsageLookupCache.SubscriptionSnapshot subscription = record.getSubscriptionId() != null
+                ? subscriptions.get(record.getSubscriptionId())
+                : null;
+        quotaService.refund(subscription, record.getMetricName(), record.getUsageValue(),
+                Boolean.TRUE.equals(record.getOverQuota()));
+    }
+
+    private void rememberIdempotencyKey(UsageRecord record) {
+        if (record.getIdempotencyKey() != null) {
+            usageDeduplicator.remember(record.getUserId(), record.getIdempotencyKey());
+        }
+    }
+
+    private UsageBatchResponse.ItemResult batchItemResult(int index, String id, String error) {
+        return UsageBatchResponse.ItemResult.builder()
+                .index(index)
+                .success(error == null)
+                .id(id)
+                .error(error)
+                .build();
+    }
+
     /**
      * Get user's usage records with pagination.
      */
@@ -79,6 +522,14 @@ public class UsageService {
         return dtoMapper.toPageResponse(page);
     }
 
+    /**
+     * Get user's usage with cursor pagination.
+     */
+    public CursorPageResponse<UsageResponse> getUserUsage(String userId, String cursor, int size) {
+        return cursorPager.page(UsageRecord.class, Criteria.where("userId").is(userId), "recordedAt",
+                UsageRecord::getRecordedAt, UsageRecord::getId, cursor, size, dtoMapper::toUsageResponse);
+    }
+
     /**
      * Get user's usage by metric.
      */
@@ -93,24 +544,112 @@ public class UsageService {
      * Get total usage for a user within a time range.
      */
     public Long getTotalUsage(String userId, String metric, LocalDateTime start, LocalDateTime end) {
-        List<UsageRecord> records = usageRecordRepository.findByUserIdAndRecordedAtBetween(userId, start, end);
-        return records.stream()
-                .filter(r -> metric.equals(r.getMetricName()))
-                .mapToLong(UsageRecord::getUsageValue)
-                .sum();
+        return usageRollupService.summarize(userId, metric, start, end).getOrDefault(metric, 0L);
     }
 
     /**
      * Get usage summary by metric for a user.
      */
     public Map<String, Long> getUserUsageSummary(String userId, LocalDateTime startDate) {
-        List<UsageRecord> records = usageRecordRepository.findByUserIdAndRecordedAtBetween(
-                userId, startDate, LocalDateTime.now());
+        return usageRollupService.summarize(userId, null, startDate, LocalDateTime.now());
+    }
+
+    /**
+     * Get per-day usage series for a user, optionally for a single metric.
+     */
+    public List<DailyUsageResponse> getDailyUsage(String userId, String metricName, LocalDateTime start,
+            LocalDateTime end) {
+        return usageRecordRepository.dailyUsage(userId, metricName, start, end);
+    }
+
+    /**
+     * Stream a user's usage records to the output as NDJSON or CSV.
+     * Walks a MongoDB cursor with a bounded batch size so memory stays constant
+     * regardless of export size.
+     */
+    public long exportUsage(String userId, String metricName, LocalDateTime start, LocalDateTime end,
+            UsageExportFormat format, OutputStream outputStream) throws IOException {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (metricName != null) {
+            criteria.and("metricName").is(metricName);
+        }
+        if (start != null || end != null) {
+            Criteria range = criteria.and("recordedAt");
+            if (start != null) {
+                range.gte(start);
+            }
+            if (end != null) {
+                range.lt(end);
+            }
+        }
+        Query query = Query.query(criteria).cursorBatchSize(exportBatchSize);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator generator = null;
+        // ObjectMapper flushes the generator after every value by default, i.e. one network write per row
+        ObjectWriter rowWriter = objectMapper.writerFor(UsageResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        if (format == UsageExportFormat.CSV) {
+            writer.write("id,subscriptionId,metricName,usageValue,unit,description,recordedAt\n");
+        } else {
+            generator = objectMapper.getFactory().createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        long count = 0;
+        try (Stream<UsageRecord> records = mongoTemplate.stream(query, UsageRecord.class)) {
+            Iterator<UsageRecord> iterator = records.iterator();
+            while (iterator.hasNext()) {
+                UsageRecord record = iterator.next();
+                if (generator != null) {
+                    rowWriter.writeValue(generator, dtoMapper.toUsageResponse(record));
+                    generator.writeRaw('\n');
+                } else {
+                    writeCsvRow(writer, record);
+                }
+                count++;
+            }
+        }
 
-        Map<String, Long> summary = new HashMap<>();
-        for (UsageRecord record : records) {
-            summary.merge(record.getMetricName(), record.getUsageValue(), Long::sum);
+        if (generator != null) {
+            generator.flush();
         }
-        return summary;
+        writer.flush();
+        log.info("Exported {} usage records for user: {} as {}", count, userId, format);
+        return count;
+    }
+
+    private void writeCsvRow(Writer writer, UsageRecord record) throws IOException {
+        writer.write(csv(record.getId()));
+        writer.write(',');
+        writer.write(csv(record.getSubscriptionId()));
+        writer.write(',');
+        writer.write(csv(record.getMetricName()));
+        writer.write(',');
+        writer.write(record.getUsageValue() != null ? record.getUsageValue().toString() : "");
+        writer.write(',');
+        writer.write(csv(record.getUnit()));
+        writer.write(',');
+        writer.write(csv(record.getDescription()));
+        writer.write(',');
+        writer.write(record.getRecordedAt() != null ? record.getRecordedAt().toString() : "");
+        writer.write('\n');
+    }
+
+    private String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Rebuild usage rollups from raw usage records.
+     */
+    public void rebuildRollups() {
+        usageRollupService.rebuildFromRawRecords();
     }
 }
@@ -0,0 +1,159 @@
+package com.project.saasbilling.service;
+
+import com.project.saasbilling.config.UsageStorageConfig;
+import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.model.UsageRecord;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Service managing the collection layout of raw usage records.
+ * Creates the time-series collection when time-series mode is enabled and
+ * migrates records from the regular collection into it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UsageStorageService {
+
+    private final MongoTemplate mongoTemplate;
+    private final UsageStorageConfig usageStorageConfig;
+
+    @Value("${usage.storage.migration.batch-size:1000}")
+    private int migrationBatchSize;
+
+    /**
+     * Whether usage records are stored in a time-series collection.
+     */
+    public boolean isTimeSeries() {
+        return usageStorageConfig.isTimeSeries();
+    }
+
+    /**
+     * Create the time-series collection and its secondary indexes on startup.
+     */
+    @PostConstruct
+    public void ensureCollection() {
+        if (!usageStorageConfig.isTimeSeries()) {
+            return;
+        }
+
+        try {
+            String collection = usageStorageConfig.getCollectionName();
+            if (!mongoTemplate.collectionExists(collection)) {
+                mongoTemplate.createCollection(collection, CollectionOptions.timeSeries(
+                        UsageStorageConfig.TIME_FIELD, options -> options
+                                .metaField(UsageStorageConfig.META_FIELD)
+                                .granularity(usageStorageConfig.getGranularity())));
+                log.info("Created usage time-series collection {} with {} granularity", collection,
+                        usageStorageConfig.getGranularity());
+            }
+
+            // Repository queries filter on top-level fields, so index those as well as the metaField
+            IndexOperations indexOps = mongoTemplate.indexOps(collection);
+            indexOps.ensureIndex(new Index()
+                    .named("user_metric_recorded_idx")
+                    .on("userId", Sort.Direction.ASC)
+                    .on("metricName", Sort.Direction.ASC)
+                    .on("recordedAt", Sort.Direction.ASC));
+            indexOps.ensureIndex(new Index()
+                    .named("subscription_recorded_idx")
+                    .on("subscriptionId", Sort.Direction.ASC)
+                    .on("recordedAt", Sort.Direction.ASC));
+            indexOps.ensureIndex(new Index()
+                    .named("user_recorded_id_idx")
+                    .on("userId", Sort.Direction.ASC)
+                    .on("recordedAt", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC));
+        } catch (Exception e) {
+            log.warn("Failed to prepare usage time-series collection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Copy usage records from the regular collection into the time-series collection.
+     * Copies in _id order and resumes after the last copied record, so an
+     * interrupted migration can simply be re-run.
+     *
+     * @return number of records copied by this run
+     */
+    public long migrateToTimeSeries() {
+        if (!usageStorageConfig.isTimeSeries()) {
+            throw new BadRequestException("Usage storage is not in TIME_SERIES mode");
+        }
+
+        String source = UsageStorageConfig.STANDARD_COLLECTION;
+        String target = usageStorageConfig.getCollectionName();
+        if (!mongoTemplate.collectionExists(source)) {
+            return 0;
+        }
+        ensureCollection();
+
+        Document sourceLast = mongoTemplate.findOne(lastIdQuery(), Document.class, source);
+        if (sourceLast == null) {
+            return 0;
+        }
+
+        // Records written after the switch have newer ids, so only look for copies up to the source's last id
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id"));
+        Query lastCopiedQuery = lastIdQuery().addCriteria(Criteria.where("_id").lte(sourceLast.get("_id")));
+        Document last = mongoTemplate.findOne(lastCopiedQuery, Document.class, target);
+        if (last != null) {
+            query.addCriteria(Criteria.where("_id").gt(last.get("_id")));
+        }
+        query.cursorBatchSize(migrationBatchSize);
+
+        long copied = 0;
+        List<Document> batch = new ArrayList<>(migrationBatchSize);
+        try (Stream<Document> records = mongoTemplate.stream(query, Document.class, source)) {
+            for (Document record : (Iterable<Document>) records::iterator) {
+                record.put(UsageStorageConfig.META_FIELD, new Document()
+                        .append("userId", record.get("userId"))
+                        .append("subscriptionId", record.get("subscriptionId"))
+                        .append("metricName", record.get("metricName")));
+                batch.add(record);
+                if (batch.size() == migrationBatchSize) {
+                    copied += insertBatch(target, batch);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            copied += insertBatch(target, batch);
+        }
+
+        log.info("Migrated {} usage records from {} to {}", copied, source, target);
+        return copied;
+    }
+
+    private Query lastIdQuery() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "_id")).limit(1);
+        query.fields().include("_id");
+        return query;
+    }
+
+    private int insertBatch(String collection, List<Document> batch) {
+        // Ordered so a failure leaves a contiguous _id prefix to resume from
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, UsageRecord.class, collection)
+                .insert(batch)
+                .execute();
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+}
@@ -1,5 +1,6 @@
 package com.project.saasbilling.service;
 
+import com.project.saasbilling.dto.CursorPageResponse;
 import com.project.saasbilling.dto.PageResponse;
 import com.project.saasbilling.dto.UserResponse;
 import com.project.saasbilling.dto.UserUpdateRequest;
@@ -8,6 +9,7 @@ import com.project.saasbilling.exception.ResourceNotFoundException;
 import com.project.saasbilling.model.Role;
 import com.project.saasbilling.model.User;
 import com.project.saasbilling.repository.UserRepository;
+import com.project.saasbilling.util.CursorPager;
 import com.project.saasbilling.util.DtoMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,7 +29,9 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UsageLookupCache usageLookupCache;
     private final DtoMapper dtoMapper;
+    private final CursorPager cursorPager;
 
     /**
      * Get user by ID.
@@ -63,6 +67,14 @@ public class UserService {
         return dtoMapper.toPageResponse(page);
     }
 
+    /**
+     * Get all users with cursor pagination.
+     */
+    public CursorPageResponse<UserResponse> getAllUsers(String cursor, int size) {
+        return cursorPager.page(User.class, null, "createdAt",
+                User::getCreatedAt, User::getId, cursor, size, dtoMapper::toUserResponse);
+    }
+
     /**
      * Update user profile.
      */
@@ -87,6 +99,7 @@ public class UserService {
         }
 
         user = userRepository.save(user);
+        usageLookupCache.invalidateUser(user.getId());
         log.info("User updated successfully: {}", user.getId());
 
         return dtoMapper.toUserResponse(user);
@@ -0,0 +1,411 @@
+package com.project.saasbilling.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.saasbilling.exception.BadRequestException;
+import com.project.saasbilling.exception.WebhookSignatureException;
+import com.project.saasbilling.model.PaymentOrder;
+import com.project.saasbilling.model.PaymentStatus;
+import com.project.saasbilling.model.WebhookEvent;
+import com.project.saasbilling.model.WebhookEventStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gateway webhook ingestion.
+ * Events are verified, written to the inbox collection and acknowledged
+ * straight away; the gateway event id is the inbox key, so redeliveries are
+ * dropped by the primary key. Processing happens off the request thread on
+ * single-threaded lanes picked by order id: every event of an order lands on
+ * the same lane, and a lane drains an order's pending events oldest first, so
+ * events of one order apply in arrival order while different orders proceed
+ * in parallel. Across nodes, an order is drained only while holding its lease
+ * document, so two nodes never apply events of the same order concurrently.
+ * Events left behind by a full lane or a crashed node are re-dispatched by a
+ * periodic sweep.
+ */
+@Service
+@Slf4j
+public class WebhookService {
+
+    private static final Set<String> CAPTURED_EVENTS = Set.of("payment.captured", "order.paid");
+    private static final Set<String> FAILED_EVENTS = Set.of("payment.failed");
+    private static final Set<String> REFUNDED_EVENTS = Set.of("refund.processed", "payment.refunded");
+    private static final String LEASES_COLLECTION = "webhook_order_leases";
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final SignatureService signatureService;
+    private final Counter acceptedCounter;
+    private final Counter duplicateCounter;
+    private final Counter rejectedCounter;
+    private final Counter processedCounter;
+    private final Counter failedCounter;
+
+    @Value("${billing.webhook.workers:4}")
+    private int workers;
+
+    @Value("${billing.webhook.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${billing.webhook.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${billing.webhook.stale-after-seconds:300}")
+    private long staleAfterSeconds;
+
+    private ThreadPoolExecutor[] lanes;
+
+    public WebhookService(MongoTemplate mongoTemplate, ObjectMapper objectMapper, SignatureService signatureService,
+            MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.signatureService = signatureService;
+        this.acceptedCounter = eventCounter(meterRegistry, "accepted");
+        this.duplicateCounter = eventCounter(meterRegistry, "duplicate");
+        this.rejectedCounter = eventCounter(meterRegistry, "rejected");
+        this.processedCounter = eventCounter(meterRegistry, "processed");
+        this.failedCounter = eventCounter(meterRegistry, "failed");
+        Gauge.builder("webhook.queue.depth", this, WebhookService::queueDepth)
+                .description("Webhook events waiting for a processing lane")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            // Leases are released after draining; this only cleans up after crashed nodes
+            mongoTemplate.indexOps(LEASES_COLLECTION).ensureIndex(new Index()
+                    .named("leased_until_ttl_idx")
+                    .on("leasedUntil", Sort.Direction.ASC)
+                    .expire(0, TimeUnit.SECONDS));
+        } catch (Exception e) {
+            log.warn("Failed to ensure webhook lease TTL index: {}", e.getMessage());
+        }
+
+        int perLaneCapacity = Math.max(1, queueCapacity / workers);
+        lanes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            String name = "webhook-lane-" + (i + 1);
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(perLaneCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    /**
+     * Verify, store and schedule a gateway webhook.
+     * Returns once the event is durable in the inbox; redelivered events are
+     * acknowledged without being stored again.
+     */
+    public void receive(String payload, String signature, String eventId) {
+        if (!signatureService.verifyWebhook(payload, signature)) {
+            rejectedCounter.increment();
+            throw new WebhookSignatureException("Invalid webhook signature");
+        }
+
+        WebhookEvent event = parse(payload, eventId);
+        try {
+            mongoTemplate.insert(event);
+        } catch (DuplicateKeyException e) {
+            duplicateCounter.increment();
+            log.debug("Duplicate webhook event {} ignored", event.getId());
+            return;
+        }
+        acceptedCounter.increment();
+
+        if (event.getStatus() == WebhookEventStatus.RECEIVED) {
+            dispatch(event.getOrderId());
+        }
+    }
+
+    /**
+     * Re-dispatch orders with events nobody is working on: events whose lane
+     * was full and events claimed by a node that stopped before finishing.
+     */
+    @Scheduled(fixedDelayString = "${billing.webhook.sweep-interval-ms:30000}")
+    public void sweep() {
+        LocalDateTime staleBefore = LocalDateTime.now().minusSeconds(staleAfterSeconds);
+        long released = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("status").is(WebhookEventStatus.PROCESSING)
+                        .and("claimedAt").lt(staleBefore)),
+                new Update().set("status", WebhookEventStatus.RECEIVED),
+                WebhookEvent.class).getModifiedCount();
+        if (released > 0) {
+            log.warn("Released {} webhook events from stalled workers", released);
+        }
+
+        // Only events that have waited a while, so freshly queued ones are not dispatched twice
+        List<String> orderIds = mongoTemplate.findDistinct(
+                Query.query(Criteria.where("status").is(WebhookEventStatus.RECEIVED)
+                        .and("receivedAt").lt(LocalDateTime.now().minusSeconds(Math.max(1, staleAfterSeconds / 10)))),
+                "orderId", WebhookEvent.class, String.class);
+        orderIds.forEach(this::dispatch);
+    }
+
+    private void dispatch(String orderId) {
+        ThreadPoolExecutor lane = lanes[Math.floorMod(orderId.hashCode(), lanes.length)];
+        try {
+            lane.execute(() -> drainOrder(orderId));
+        } catch (RejectedExecutionException e) {
+            // The event stays RECEIVED in the inbox and is picked up by the next sweep
+            log.warn("Webhook lane full, deferring order {} to the sweep", orderId);
+        }
+    }
+
+    /**
+     * Drain an order under its lease. If another node holds the lease, that
+     * node drains the order; each holder checks for events that arrived while
+     * it held the lease after releasing it, so none waits for the sweep.
+     */
+    private void drainOrder(String orderId) {
+        boolean drained;
+        do {
+            String token = acquireLease(orderId);
+            if (token == null) {
+                return;
+            }
+            try {
+                drained = drainLeased(orderId, token);
+            } finally {
+                releaseLease(orderId, token);
+            }
+        } while (drained && hasPending(orderId));
+    }
+
+    /**
+     * Apply an order's pending events oldest first. Stops at an event that
+     * fails so later events of the order are not applied ahead of it, and when
+     * the lease is lost.
+     *
+     * @return whether the order was drained completely
+     */
+    private boolean drainLeased(String orderId, String token) {
+        if (mongoTemplate.exists(Query.query(Criteria.where("orderId").is(orderId)
+                .and("status").is(WebhookEventStatus.PROCESSING)), WebhookEvent.class)) {
+            // Left by a holder whose lease expired; the sweep releases it and it must apply first
+            return false;
+        }
+        WebhookEvent event;
+        while (renewLease(orderId, token) && (event = claimNext(orderId)) != null) {
+            try {
+                WebhookEventStatus outcome = apply(event);
+                finish(event, outcome, null);
+                processedCounter.increment();
+            } catch (Exception e) {
+                failedCounter.increment();
+                if (event.getAttempts() >= maxAttempts) {
+                    log.error("Webhook event {} failed after {} attempts: {}", event.getId(), event.getAttempts(),
+                            e.getMessage(), e);
+                    finish(event, WebhookEventStatus.FAILED, e.getMessage());
+                    continue;
+                }
+                log.warn("Webhook event {} failed, will retry: {}", event.getId(), e.getMessage());
+                finish(event, WebhookEventStatus.RECEIVED, e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Take the order's lease if nobody holds it or the holder's lease expired.
+     * Returns the lease token, or null if another worker holds it.
+     */
+    private String acquireLease(String orderId) {
+        String token = UUID.randomUUID().toString();
+        Date now = new Date();
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(orderId).and("leasedUntil").lt(now)),
+                    new Update().set("owner", token).set("leasedUntil", leaseExpiry(now)), LEASES_COLLECTION);
+            return token;
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+    }
+
+    private boolean renewLease(String orderId, String token) {
+        boolean held = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(orderId).and("owner").is(token)),
+                Update.update("leasedUntil", leaseExpiry(new Date())), LEASES_COLLECTION).getMatchedCount() > 0;
+        if (!held) {
+            log.warn("Lost the webhook lease of order {}, leaving it to the new holder", orderId);
+        }
+        return held;
+    }
+
+    private void releaseLease(String orderId, String token) {
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(orderId).and("owner").is(token)),
+                    LEASES_COLLECTION);
+        } catch (Exception e) {
+            log.warn("Failed to release the webhook lease of order {}: {}", orderId, e.getMessage());
+        }
+    }
+
+    private Date leaseExpiry(Date now) {
+        return new Date(now.getTime() + TimeUnit.SECONDS.toMillis(staleAfterSeconds));
+    }
+
+    private boolean hasPending(String orderId) {
+        return mongoTemplate.exists(Query.query(Criteria.where("orderId").is(orderId)
+                .and("status").is(WebhookEventStatus.RECEIVED)), WebhookEvent.class);
+    }
+
+    private WebhookEvent claimNext(String orderId) {
+        Query query = Query.query(Criteria.where("orderId").is(orderId).and("status").is(WebhookEventStatus.RECEIVED))
+                .with(Sort.by(Sort.Order.asc("receivedAt"), Sort.Order.asc("_id")));
+        Update update = new Update()
+                .set("status", WebhookEventStatus.PROCESSING)
+                .set("claimedAt", LocalDateTime.now())
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                WebhookEvent.class);
+    }
+
+    private void finish(WebhookEvent event, WebhookEventStatus status, String error) {
+        Update update = new Update().set("status", status).set("lastError", error);
+        if (status != WebhookEventStatus.RECEIVED) {
+            update.set("processedAt", LocalDateTime.now());
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(event.getId())), update, WebhookEvent.class);
+    }
+
+    /**
+     * Apply one event to its payment order. Transitions are conditional on the
+     * current status so a replayed or late event cannot move an order backwards.
+     */
+    private WebhookEventStatus apply(WebhookEvent event) {
+        Criteria order = Criteria.where("razorpayOrderId").is(event.getOrderId());
+        String type = event.getEventType();
+        Query query;
+        Update update;
+
+        if (CAPTURED_EVENTS.contains(type)) {
+            query = Query.query(order.and("status").in(PaymentStatus.PENDING, PaymentStatus.FAILED));
+            update = new Update().set("status", PaymentStatus.SUCCESS).unset("failureReason");
+            if (event.getPaymentId() != null) {
+                update.set("razorpayPaymentId", event.getPaymentId());
+            }
+        } else if (FAILED_EVENTS.contains(type)) {
+            query = Query.query(order.and("status").is(PaymentStatus.PENDING));
+            update = new Update().set("status", PaymentStatus.FAILED).set("failureReason", failureReason(event));
+        } else if (REFUNDED_EVENTS.contains(type)) {
+            query = Query.query(order.and("status").is(PaymentStatus.SUCCESS));
+            update = new Update().set("status", PaymentStatus.REFUNDED);
+        } else {
+            return WebhookEventStatus.IGNORED;
+        }
+
+        update.currentDate("updatedAt");
+        long modified = mongoTemplate.updateFirst(query, update, PaymentOrder.class).getModifiedCount();
+        log.info("Webhook {} for order {} {}", type, event.getOrderId(), modified > 0 ? "applied" : "had no effect");
+        return modified > 0 ? WebhookEventStatus.PROCESSED : WebhookEventStatus.IGNORED;
+    }
+
+    private WebhookEvent parse(String payload, String eventId) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(payload);
+        } catch (Exception e) {
+            throw new BadRequestException("Malformed webhook payload");
+        }
+
+        String type = root.path("event").asText(null);
+        JsonNode payment = root.path("payload").path("payment").path("entity");
+        JsonNode refund = root.path("payload").path("refund").path("entity");
+        String paymentId = payment.path("id").asText(refund.path("payment_id").asText(null));
+        String orderId = payment.path("order_id").asText(root.path("payload").path("order").path("entity")
+                .path("id").asText(null));
+
+        boolean handled = orderId != null && (CAPTURED_EVENTS.contains(type) || FAILED_EVENTS.contains(type)
+                || REFUNDED_EVENTS.contains(type));
+        LocalDateTime now = LocalDateTime.now();
+
+        return WebhookEvent.builder()
+                // Without a gateway event id, identical redeliveries still dedupe on the body hash
+                .id(eventId != null && !eventId.isBlank() ? eventId : sha256(payload))
+                .eventType(type)
+                .orderId(orderId)
+                .paymentId(paymentId)
+                .payload(payload)
+                .status(handled ? WebhookEventStatus.RECEIVED : WebhookEventStatus.IGNORED)
+                .receivedAt(now)
+                .processedAt(handled ? null : now)
+                .build();
+    }
+
+    private String failureReason(WebhookEvent event) {
+        try {
+            return objectMapper.readTree(event.getPayload()).path("payload").path("payment").path("entity")
+                    .path("error_description").asText("Payment failed");
+        } catch (Exception e) {
+            return "Payment failed";
+        }
+    }
+
+    private static String sha256(String payload) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private double queueDepth() {
+        if (lanes == null) {
+            return 0;
+        }
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("webhook.events")
+                .description("Gateway webhook events by ingestion and processing result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
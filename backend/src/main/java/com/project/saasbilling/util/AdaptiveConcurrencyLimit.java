@@ -0,0 +1,118 @@
+package com.project.saasbilling.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts with additive increase / multiplicative
+ * decrease. Calls that fail, time out or exceed the latency target shrink the
+ * limit; calls within target grow it by roughly one per limit's worth of
+ * calls, up to the configured maximum. {@link #tryAcquire()} never blocks so
+ * callers over the limit can fail fast; background work that can afford to
+ * wait queues for a slot with {@link #tryAcquire(long, TimeUnit)}.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.7;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    // A lock rather than a monitor so waiting virtual threads do not pin their carrier
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition slotFreed = waitLock.newCondition();
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, long latencyTargetMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTargetNanos = latencyTargetMillis * 1_000_000L;
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Take a slot if the current limit allows it.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take a slot, waiting up to the timeout for one to be released.
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryAcquire()) {
+            return true;
+        }
+        long remainingNanos = unit.toNanos(timeout);
+        waiting.incrementAndGet();
+        waitLock.lock();
+        try {
+            while (!tryAcquire()) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = slotFreed.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            waitLock.unlock();
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Return a slot and adjust the limit from the call's outcome.
+     */
+    public void release(long latencyNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (failed || latencyNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+        signalWaiters();
+    }
+
+    /**
+     * Return a slot for a call that never ran, without adjusting the limit.
+     */
+    public void releaseUnused() {
+        inFlight.decrementAndGet();
+        signalWaiters();
+    }
+
+    private void signalWaiters() {
+        if (waiting.get() == 0) {
+            return;
+        }
+        waitLock.lock();
+        try {
+            slotFreed.signal();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,115 @@
+package com.project.saasbilling.util;
+
+import com.project.saasbilling.dto.CursorPageResponse;
+import com.project.saasbilling.exception.BadRequestException;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination over (sort field, _id), newest first.
+ * Each page seeks directly past the previous one instead of skipping, and
+ * fetches one extra document to detect the end, so no count query is run.
+ * The cursor is opaque to clients and bound to the sort field it was issued for.
+ */
+@Component
+@RequiredArgsConstructor
+public class CursorPager {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String SEPARATOR = "|";
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Fetch the page after the cursor (or the first page when cursor is null).
+     * The filter may be null to page over the whole collection.
+     */
+    public <E, R> CursorPageResponse<R> page(Class<E> type, Criteria filter, String sortField,
+            Function<E, LocalDateTime> sortKey, Function<E, String> idOf, String cursor, int size,
+            Function<E, R> mapper) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        Criteria criteria = filter != null ? filter : new Criteria();
+        if (cursor != null && !cursor.isBlank()) {
+            criteria = new Criteria().andOperator(criteria, after(decode(cursor, sortField), sortField));
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, sortField, "_id"))
+                .limit(pageSize + 1);
+        List<E> entities = mongoTemplate.find(query, type);
+
+        boolean hasMore = entities.size() > pageSize;
+        if (hasMore) {
+            entities = entities.subList(0, pageSize);
+        }
+
+        List<R> content = new ArrayList<>(entities.size());
+        entities.forEach(entity -> content.add(mapper.apply(entity)));
+
+        String nextCursor = null;
+        if (hasMore) {
+            E last = entities.get(entities.size() - 1);
+            nextCursor = encode(sortField, sortKey.apply(last), idOf.apply(last));
+        }
+
+        return CursorPageResponse.<R>builder()
+                .content(content)
+                .size(pageSize)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Documents after the cursor position in (sortField DESC, _id DESC) order.
+     * Documents without a sort value sort last.
+     */
+    private Criteria after(Position position, String sortField) {
+        Object id = ObjectId.isValid(position.id()) ? new ObjectId(position.id()) : position.id();
+        if (position.sortValue() == null) {
+            return new Criteria().andOperator(Criteria.where(sortField).is(null), Criteria.where("_id").lt(id));
+        }
+        return new Criteria().orOperator(
+                Criteria.where(sortField).lt(position.sortValue()),
+                new Criteria().andOperator(Criteria.where(sortField).is(position.sortValue()),
+                        Criteria.where("_id").lt(id)),
+                Criteria.where(sortField).is(null));
+    }
+
+    private String encode(String sortField, LocalDateTime sortValue, String id) {
+        String raw = sortField + SEPARATOR + (sortValue != null ? sortValue : "") + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Position decode(String cursor, String sortField) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3 || !parts[0].equals(sortField) || parts[2].isEmpty()) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            return new Position(parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]), parts[2]);
+        } catch (BadRequestException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    private record Position(LocalDateTime sortValue, String id) {
+    }
+}
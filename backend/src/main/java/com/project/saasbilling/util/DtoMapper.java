@@ -2,7 +2,7 @@ package com.project.saasbilling.util;
 
 import com.project.saasbilling.dto.*;
 import com.project.saasbilling.model.*;
-import com.project.saasbilling.repository.PlanRepository;
+import com.project.saasbilling.service.PlanCatalog;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
@@ -15,7 +15,7 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class DtoMapper {
 
-    private final PlanRepository planRepository;
+    private final PlanCatalog planCatalog;
 
     public UserResponse toUserResponse(User user) {
         return UserResponse.builder()
@@ -45,6 +45,9 @@ public class DtoMapper {
                 .apiCallsLimit(plan.getApiCallsLimit())
                 .storageLimitMb(plan.getStorageLimitMb())
                 .usersLimit(plan.getUsersLimit())
+                .usageOveragePrice(plan.getUsageOveragePrice())
+                .apiCallsOveragePrice(plan.getApiCallsOveragePrice())
+                .storageOveragePrice(plan.getStorageOveragePrice())
                 .active(plan.getActive())
                 .isFeatured(plan.getIsFeatured())
                 .trialDays(plan.getTrialDays())
@@ -81,7 +84,7 @@ public class DtoMapper {
         // Fetch plan if planId is available
         Plan plan = null;
         if (subscription.getPlanId() != null) {
-            plan = planRepository.findById(subscription.getPlanId()).orElse(null);
+            plan = planCatalog.findById(subscription.getPlanId()).orElse(null);
         }
         return toSubscriptionResponse(subscription, plan);
     }
@@ -108,10 +111,56 @@ public class DtoMapper {
                 .billingPeriodEnd(invoice.getBillingPeriodEnd())
                 .notes(invoice.getNotes())
                 .pdfUrl(invoice.getPdfUrl())
+                .lineItems(invoice.getLineItems() != null
+                        ? invoice.getLineItems().stream().map(this::toInvoiceLineItemResponse).toList()
+                        : null)
                 .createdAt(invoice.getCreatedAt())
                 .build();
     }
 
+    private InvoiceResponse.LineItem toInvoiceLineItemResponse(InvoiceLineItem item) {
+        return InvoiceResponse.LineItem.builder()
+                .description(item.getDescription())
+                .quotaType(item.getQuotaType())
+                .quantity(item.getQuantity())
+                .includedQuantity(item.getIncludedQuantity())
+                .billableQuantity(item.getBillableQuantity())
+                .unitPrice(item.getUnitPrice())
+                .amount(item.getAmount())
+                .build();
+    }
+
+    public BillingRunResponse toBillingRunResponse(BillingRun run) {
+        return BillingRunResponse.builder()
+                .status(run.getStatus())
+                .owner(run.getOwner())
+                .cutoff(run.getCutoff())
+                .processed(run.getProcessed())
+                .renewed(run.getRenewed())
+                .failed(run.getFailed())
+                .invoicesCreated(run.getInvoicesCreated())
+                .subscriptionsPerSecond(run.getSubscriptionsPerSecond())
+                .startedAt(run.getStartedAt())
+                .heartbeatAt(run.getHeartbeatAt())
+                .finishedAt(run.getFinishedAt())
+                .lastError(run.getLastError())
+                .build();
+    }
+
+    public InvoicePdfJobResponse toInvoicePdfJobResponse(InvoicePdfJob job) {
+        return InvoicePdfJobResponse.builder()
+                .id(job.getId())
+                .status(job.getStatus())
+                .month(job.getMonth())
+                .missingOnly(job.isMissingOnly())
+                .rendered(job.getRendered())
+                .failed(job.getFailed())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .lastError(job.getLastError())
+                .build();
+    }
+
     public PaymentResponse toPaymentResponse(PaymentLog payment) {
         return PaymentResponse.builder()
                 .id(payment.getId())
@@ -144,7 +193,9 @@ public class DtoMapper {
                 .usageValue(usage.getUsageValue())
                 .unit(usage.getUnit())
                 .description(usage.getDescription())
+                .idempotencyKey(usage.getIdempotencyKey())
                 .recordedAt(usage.getRecordedAt())
+                .overQuota(usage.getOverQuota())
                 .build();
     }
 
@@ -0,0 +1,103 @@
+package com.project.saasbilling.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Hi/lo sequence handing out values from blocks reserved in a shared store.
+ * Values inside a block are taken with a lock-free increment. The next block
+ * is reserved in the background once half of the current one is used, so
+ * callers only reach the store themselves when the first block is needed or
+ * a prefetch could not keep up.
+ */
+public class HiLoSequence {
+
+    private final int blockSize;
+    // Reserves the next block and returns the highest value in it
+    private final LongSupplier reserveBlock;
+    private final Executor prefetchExecutor;
+    private final AtomicReference<CompletableFuture<Block>> prefetched = new AtomicReference<>();
+    private volatile Block current;
+
+    public HiLoSequence(int blockSize, LongSupplier reserveBlock, Executor prefetchExecutor) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.reserveBlock = reserveBlock;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Next value of the sequence.
+     */
+    public long next() {
+        while (true) {
+            Block block = current;
+            if (block != null) {
+                long value = block.cursor.getAndIncrement();
+                if (value <= block.last) {
+                    if (value == block.prefetchAt) {
+                        prefetch();
+                    }
+                    return value;
+                }
+            }
+            advance(block);
+        }
+    }
+
+    private synchronized void advance(Block exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+
+        CompletableFuture<Block> next = prefetched.getAndSet(null);
+        Block block = null;
+        if (next != null) {
+            try {
+                block = next.join();
+            } catch (Exception e) {
+                // Fall back to reserving the block in the caller
+            }
+        }
+        current = block != null ? block : reserve();
+    }
+
+    private void prefetch() {
+        CompletableFuture<Block> future = new CompletableFuture<>();
+        if (prefetched.compareAndSet(null, future)) {
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        future.complete(reserve());
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Block reserve() {
+        long last = reserveBlock.getAsLong();
+        return new Block(last - blockSize + 1, last, last - blockSize / 2);
+    }
+
+    private static final class Block {
+        private final AtomicLong cursor;
+        private final long last;
+        private final long prefetchAt;
+
+        private Block(long first, long last, long prefetchAt) {
+            this.cursor = new AtomicLong(first);
+            this.last = last;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+}
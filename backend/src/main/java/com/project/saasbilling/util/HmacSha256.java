@@ -0,0 +1,150 @@
+package com.project.saasbilling.util;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * HMAC-SHA256 signer and verifier for one key.
+ * Each thread keeps its own initialised {@link Mac} and digest buffer, so a
+ * verification neither looks up a provider nor re-derives the key schedule.
+ * Fields are UTF-8 encoded into a fixed per-thread buffer that is fed to the
+ * Mac whenever it fills, so encoding a message of any length allocates
+ * nothing; what remains per call is the JDK Mac's own inner digest and the
+ * varargs array. Hex signatures are compared digit by digit against the
+ * digest in constant time without being decoded. Multi-field messages are fed as fields joined by '|', the layout gateways
+ * use for order and payment ids, without concatenating them first.
+ */
+public class HmacSha256 {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int DIGEST_LENGTH = 32;
+    private static final int ENCODE_BUFFER_SIZE = 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ThreadLocal<State> state;
+
+    public HmacSha256(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("HMAC secret must not be empty");
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        // Fail at construction rather than on the first verification
+        newMac(key);
+        this.state = ThreadLocal.withInitial(() -> new State(newMac(key)));
+    }
+
+    /**
+     * Sign the fields as a lowercase hex string.
+     */
+    public String signHex(String... fields) {
+        byte[] digest = digest(fields);
+        char[] hex = new char[DIGEST_LENGTH * 2];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Check a hex signature (either case) of the fields in constant time.
+     */
+    public boolean verifyHex(String signature, String... fields) {
+        if (signature == null || signature.length() != DIGEST_LENGTH * 2) {
+            return false;
+        }
+        byte[] digest = digest(fields);
+        int diff = 0;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            diff |= hexValue(signature.charAt(i * 2)) ^ ((digest[i] >> 4) & 0xF);
+            diff |= hexValue(signature.charAt(i * 2 + 1)) ^ (digest[i] & 0xF);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Compute the digest into the calling thread's buffer, which is only valid until its next call.
+     */
+    private byte[] digest(String... fields) {
+        State current = state.get();
+        Mac mac = current.mac;
+        byte[] buffer = current.encoded;
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                if (length > buffer.length - 4) {
+                    mac.update(buffer, 0, length);
+                    length = 0;
+                }
+                buffer[length++] = '|';
+            }
+            String field = fields[i];
+            for (int j = 0; j < field.length(); j++) {
+                // Flush while there is still room for the longest encoding, 4 bytes
+                if (length > buffer.length - 4) {
+                    mac.update(buffer, 0, length);
+                    length = 0;
+                }
+                char c = field.charAt(j);
+                if (c < 0x80) {
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | (c >> 6));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    buffer[length++] = (byte) (0xE0 | (c >> 12));
+                    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && j + 1 < field.length()
+                        && Character.isLowSurrogate(field.charAt(j + 1))) {
+                    int codePoint = Character.toCodePoint(c, field.charAt(++j));
+                    buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    // Unpaired surrogate, replaced as String.getBytes(UTF_8) does
+                    buffer[length++] = '?';
+                }
+            }
+        }
+        mac.update(buffer, 0, length);
+        try {
+            mac.doFinal(current.digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return current.digest;
+    }
+
+    /**
+     * Value of a hex digit, or a value no nibble matches; branch-free so timing does not depend on input.
+     */
+    private static int hexValue(char c) {
+        int digit = c - '0';
+        int lower = (c | 0x20) - 'a' + 10;
+        int isDigit = ((digit - 10) >>> 31) & ((~digit) >>> 31);
+        int isLetter = ((lower - 16) >>> 31) & ((9 - lower) >>> 31);
+        return (digit & -isDigit) | (lower & -isLetter) | (0x10 & ~(-isDigit | -isLetter));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+
+    private record State(Mac mac, byte[] encoded, byte[] digest) {
+
+        private State(Mac mac) {
+            this(mac, new byte[ENCODE_BUFFER_SIZE], new byte[DIGEST_LENGTH]);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.project.saasbilling.util;
+
+/**
+ * Source of unique identifiers for generated business keys such as
+ * transaction ids, order ids and invoice numbers.
+ */
+public interface IdGenerator {
+
+    /**
+     * Next unique id.
+     */
+    long nextId();
+
+    /**
+     * Next unique id as a fixed-width string that sorts like the numeric id.
+     */
+    String nextIdString();
+}
@@ -0,0 +1,165 @@
+package com.project.saasbilling.util;
+
+import com.project.saasbilling.model.Invoice;
+import com.project.saasbilling.model.InvoiceLineItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Invoice layout compiled once from a plain-text template.
+ * Each template line becomes a text line; {field} placeholders are resolved
+ * to field accessors at compile time, so rendering only concatenates.
+ * Lines starting with '!' are bold, lines starting with '#' are headings, and
+ * lines between [items] and [/items] repeat for every invoice line item.
+ * Constants such as the application name are bound while compiling.
+ */
+public final class InvoiceTemplate {
+
+    private static final float BODY_SIZE = 10f;
+    private static final float HEADING_SIZE = 16f;
+
+    private static final Map<String, Function<Invoice, Object>> INVOICE_FIELDS = Map.ofEntries(
+            Map.entry("invoiceNumber", Invoice::getInvoiceNumber),
+            Map.entry("userName", Invoice::getUserName),
+            Map.entry("userEmail", Invoice::getUserEmail),
+            Map.entry("planName", Invoice::getPlanName),
+            Map.entry("amount", Invoice::getAmount),
+            Map.entry("taxAmount", Invoice::getTaxAmount),
+            Map.entry("discountAmount", Invoice::getDiscountAmount),
+            Map.entry("totalAmount", Invoice::getTotalAmount),
+            Map.entry("currency", Invoice::getCurrency),
+            Map.entry("status", Invoice::getStatus),
+            Map.entry("invoiceDate", Invoice::getInvoiceDate),
+            Map.entry("dueDate", Invoice::getDueDate),
+            Map.entry("paidDate", Invoice::getPaidDate),
+            Map.entry("billingPeriodStart", Invoice::getBillingPeriodStart),
+            Map.entry("billingPeriodEnd", Invoice::getBillingPeriodEnd),
+            Map.entry("notes", Invoice::getNotes));
+
+    private static final Map<String, Function<InvoiceLineItem, Object>> ITEM_FIELDS = Map.of(
+            "description", InvoiceLineItem::getDescription,
+            "quantity", InvoiceLineItem::getQuantity,
+            "includedQuantity", InvoiceLineItem::getIncludedQuantity,
+            "billableQuantity", InvoiceLineItem::getBillableQuantity,
+            "unitPrice", InvoiceLineItem::getUnitPrice,
+            "amount", InvoiceLineItem::getAmount);
+
+    private final List<CompiledLine<Invoice>> header;
+    private final List<CompiledLine<InvoiceLineItem>> items;
+    private final List<CompiledLine<Invoice>> footer;
+
+    private InvoiceTemplate(List<CompiledLine<Invoice>> header, List<CompiledLine<InvoiceLineItem>> items,
+            List<CompiledLine<Invoice>> footer) {
+        this.header = header;
+        this.items = items;
+        this.footer = footer;
+    }
+
+    /**
+     * Compile a template, failing on unknown placeholders.
+     */
+    public static InvoiceTemplate compile(String source, Map<String, String> constants) {
+        List<CompiledLine<Invoice>> header = new ArrayList<>();
+        List<CompiledLine<InvoiceLineItem>> items = new ArrayList<>();
+        List<CompiledLine<Invoice>> footer = new ArrayList<>();
+
+        int section = 0;
+        for (String line : source.split("\\R", -1)) {
+            if (line.trim().equals("[items]")) {
+                section = 1;
+            } else if (line.trim().equals("[/items]")) {
+                section = 2;
+            } else if (section == 1) {
+                items.add(compileLine(line, constants, ITEM_FIELDS));
+            } else {
+                (section == 0 ? header : footer).add(compileLine(line, constants, INVOICE_FIELDS));
+            }
+        }
+        return new InvoiceTemplate(header, items, footer);
+    }
+
+    /**
+     * Render an invoice to text lines. Invoices without line items get a single
+     * item for the plan charge.
+     */
+    public List<SimplePdfWriter.TextLine> render(Invoice invoice) {
+        List<InvoiceLineItem> lineItems = invoice.getLineItems();
+        if (lineItems == null || lineItems.isEmpty()) {
+            lineItems = List.of(InvoiceLineItem.builder()
+                    .description(invoice.getNotes() != null ? invoice.getNotes() : invoice.getPlanName())
+                    .quantity(1L)
+                    .billableQuantity(1L)
+                    .unitPrice(invoice.getAmount())
+                    .amount(invoice.getAmount())
+                    .build());
+        }
+
+        List<SimplePdfWriter.TextLine> lines = new ArrayList<>();
+        header.forEach(line -> lines.add(line.render(invoice)));
+        for (InvoiceLineItem item : lineItems) {
+            items.forEach(line -> lines.add(line.render(item)));
+        }
+        footer.forEach(line -> lines.add(line.render(invoice)));
+        return lines;
+    }
+
+    private static <T> CompiledLine<T> compileLine(String line, Map<String, String> constants,
+            Map<String, Function<T, Object>> fields) {
+        boolean heading = line.startsWith("#");
+        boolean bold = heading || line.startsWith("!");
+        String text = bold ? line.substring(1).stripLeading() : line;
+
+        List<Function<T, String>> segments = new ArrayList<>();
+        int position = 0;
+        while (position < text.length()) {
+            int open = text.indexOf('{', position);
+            int close = open < 0 ? -1 : text.indexOf('}', open);
+            if (close < 0) {
+                String literal = text.substring(position);
+                segments.add(value -> literal);
+                break;
+            }
+            if (open > position) {
+                String literal = text.substring(position, open);
+                segments.add(value -> literal);
+            }
+
+            String name = text.substring(open + 1, close);
+            String constant = constants.get(name);
+            Function<T, Object> field = fields.get(name);
+            if (constant != null) {
+                segments.add(value -> constant);
+            } else if (field != null) {
+                segments.add(value -> format(field.apply(value)));
+            } else {
+                throw new IllegalArgumentException("Unknown invoice template placeholder: {" + name + "}");
+            }
+            position = close + 1;
+        }
+        return new CompiledLine<>(segments, heading ? HEADING_SIZE : BODY_SIZE, bold);
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+        return value.toString();
+    }
+
+    private record CompiledLine<T>(List<Function<T, String>> segments, float fontSize, boolean bold) {
+
+        private SimplePdfWriter.TextLine render(T value) {
+            StringBuilder text = new StringBuilder();
+            for (Function<T, String> segment : segments) {
+                text.append(segment.apply(value));
+            }
+            return new SimplePdfWriter.TextLine(text.toString(), fontSize, bold);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.project.saasbilling.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free, node-aware id generator producing 63-bit ids that sort by
+ * creation time: 41 bits of milliseconds since 2024-01-01, 10 bits of node id
+ * and 12 bits of per-millisecond sequence.
+ * The timestamp and sequence live in one atomic word advanced with CAS. When
+ * the sequence of a millisecond is exhausted, or the clock moves backwards,
+ * the generator keeps counting on its own logical clock instead of waiting,
+ * so ids stay unique and monotonic per node.
+ */
+public class KSortableIdGenerator implements IdGenerator {
+
+    public static final int NODE_BITS = 10;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] CROCKFORD_BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final long nodeId;
+    // (logical milliseconds << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong state = new AtomicLong();
+
+    public KSortableIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long next = now > (current >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : current + 1;
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | nodeId << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Next id as 13 Crockford base32 characters, which sort like the numeric id.
+     */
+    @Override
+    public String nextIdString() {
+        long id = nextId();
+        char[] chars = new char[13];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            chars[i] = CROCKFORD_BASE32[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+}
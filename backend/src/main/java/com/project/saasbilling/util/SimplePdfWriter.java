@@ -0,0 +1,118 @@
+package com.project.saasbilling.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal PDF writer for text-only documents.
+ * Lays lines out top to bottom on A4 pages using the standard Helvetica
+ * fonts, which every PDF reader provides, so no font data is embedded.
+ * Text is limited to Latin-1; other characters are replaced.
+ */
+public final class SimplePdfWriter {
+
+    private static final float PAGE_WIDTH = 595f;
+    private static final float PAGE_HEIGHT = 842f;
+    private static final float MARGIN = 50f;
+    private static final float LINE_SPACING = 1.4f;
+
+    /**
+     * One line of text.
+     */
+    public record TextLine(String text, float fontSize, boolean bold) {
+    }
+
+    private SimplePdfWriter() {
+    }
+
+    /**
+     * Write the lines as a PDF document.
+     */
+    public static byte[] write(List<TextLine> lines) {
+        List<String> pageContents = layoutPages(lines);
+
+        // Objects: 1 catalog, 2 page tree, 3-4 fonts, then a page and its content stream per page
+        List<String> objects = new ArrayList<>();
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pageContents.size(); i++) {
+            kids.append(5 + i * 2).append(" 0 R ");
+        }
+        objects.add("<< /Type /Catalog /Pages 2 0 R >>");
+        objects.add("<< /Type /Pages /Kids [" + kids.toString().trim() + "] /Count " + pageContents.size() + " >>");
+        objects.add("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>");
+        objects.add("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>");
+        for (int i = 0; i < pageContents.size(); i++) {
+            String content = pageContents.get(i);
+            objects.add("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + format(PAGE_WIDTH) + " "
+                    + format(PAGE_HEIGHT) + "] /Resources << /Font << /F1 3 0 R /F2 4 0 R >> >> /Contents "
+                    + (6 + i * 2) + " 0 R >>");
+            objects.add("<< /Length " + content.getBytes(StandardCharsets.ISO_8859_1).length + " >>\nstream\n"
+                    + content + "\nendstream");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        append(out, "%PDF-1.4\n");
+        long[] offsets = new long[objects.size()];
+        for (int i = 0; i < objects.size(); i++) {
+            offsets[i] = out.size();
+            append(out, (i + 1) + " 0 obj\n" + objects.get(i) + "\nendobj\n");
+        }
+
+        long xrefOffset = out.size();
+        StringBuilder xref = new StringBuilder("xref\n0 ").append(objects.size() + 1).append("\n0000000000 65535 f \n");
+        for (long offset : offsets) {
+            xref.append(String.format("%010d 00000 n \n", offset));
+        }
+        xref.append("trailer\n<< /Size ").append(objects.size() + 1).append(" /Root 1 0 R >>\nstartxref\n")
+                .append(xrefOffset).append("\n%%EOF\n");
+        append(out, xref.toString());
+        return out.toByteArray();
+    }
+
+    private static List<String> layoutPages(List<TextLine> lines) {
+        List<String> pages = new ArrayList<>();
+        StringBuilder page = new StringBuilder();
+        float y = PAGE_HEIGHT - MARGIN;
+        for (TextLine line : lines) {
+            float leading = line.fontSize() * LINE_SPACING;
+            if (y - leading < MARGIN && !page.isEmpty()) {
+                pages.add(page.toString());
+                page.setLength(0);
+                y = PAGE_HEIGHT - MARGIN;
+            }
+            y -= leading;
+            if (!line.text().isEmpty()) {
+                page.append("BT /").append(line.bold() ? "F2 " : "F1 ").append(format(line.fontSize()))
+                        .append(" Tf ").append(format(MARGIN)).append(' ').append(format(y))
+                        .append(" Td (").append(escape(line.text())).append(") Tj ET\n");
+            }
+        }
+        pages.add(page.toString());
+        return pages;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 32 || c > 255) {
+                escaped.append('?');
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String format(float value) {
+        return value == (long) value ? Long.toString((long) value) : Float.toString(value);
+    }
+
+    private static void append(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,158 @@
+package com.project.saasbilling.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bloom filter over a sliding time window.
+ * The window is split into fixed-length partitions, each backed by its own
+ * bit array. Keys are added to the current partition and looked up across
+ * all partitions still inside the window; expired partitions are recycled,
+ * so memory stays bounded regardless of traffic history.
+ * Thread-safe; lookups and inserts are lock-free.
+ */
+public class TimePartitionedBloomFilter {
+
+    private final long partitionMillis;
+    private final int numBits;
+    private final int numHashes;
+    private final AtomicReferenceArray<Partition> partitions;
+
+    /**
+     * @param windowMillis         dedup window length
+     * @param partitionCount       number of partitions the window is split into
+     * @param expectedKeysPerWindow expected distinct keys inserted per window
+     * @param falsePositiveRate    target false positive rate per partition
+     */
+    public TimePartitionedBloomFilter(long windowMillis, int partitionCount, long expectedKeysPerWindow,
+            double falsePositiveRate) {
+        if (windowMillis <= 0 || partitionCount <= 0 || expectedKeysPerWindow <= 0) {
+            throw new IllegalArgumentException("Window, partition count and expected keys must be positive");
+        }
+        this.partitionMillis = Math.max(1, windowMillis / partitionCount);
+
+        long keysPerPartition = Math.max(1, expectedKeysPerWindow / partitionCount);
+        double bits = -keysPerPartition * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.numBits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, (long) Math.ceil(bits)));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / keysPerPartition * Math.log(2)));
+
+        // One extra partition so that the live partitions always cover a full window
+        this.partitions = new AtomicReferenceArray<>(partitionCount + 1);
+    }
+
+    /**
+     * Add a key to the current partition.
+     */
+    public void put(String key) {
+        long epoch = System.currentTimeMillis() / partitionMillis;
+        Partition partition = partitionFor(epoch);
+        long[] hashes = hash(key);
+        for (int i = 0; i < numHashes; i++) {
+            partition.set(index(hashes, i));
+        }
+    }
+
+    /**
+     * Whether the key may have been added within the window.
+     * False means the key was definitely not added within the window.
+     */
+    public boolean mightContain(String key) {
+        long currentEpoch = System.currentTimeMillis() / partitionMillis;
+        long oldestEpoch = currentEpoch - partitions.length() + 1;
+        long[] hashes = hash(key);
+
+        for (int p = 0; p < partitions.length(); p++) {
+            Partition partition = partitions.get(p);
+            if (partition == null || partition.epoch < oldestEpoch || partition.epoch > currentEpoch) {
+                continue;
+            }
+            boolean present = true;
+            for (int i = 0; i < numHashes && present; i++) {
+                present = partition.get(index(hashes, i));
+            }
+            if (present) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Approximate memory held by the bit arrays, in bytes.
+     */
+    public long sizeInBytes() {
+        return (long) partitions.length() * ((numBits + 63) / 64) * Long.BYTES;
+    }
+
+    private Partition partitionFor(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) partitions.length());
+        while (true) {
+            Partition existing = partitions.get(slot);
+            if (existing != null && existing.epoch == epoch) {
+                return existing;
+            }
+            if (existing != null && existing.epoch > epoch) {
+                // Clock moved backwards across a partition boundary; reuse the newer partition
+                return existing;
+            }
+            Partition fresh = new Partition(epoch, numBits);
+            if (partitions.compareAndSet(slot, existing, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long[] hashes, int i) {
+        // Kirsch-Mitzenmacher double hashing
+        long combined = hashes[0] + i * hashes[1];
+        return (int) Math.floorMod(combined, (long) numBits);
+    }
+
+    private static long[] hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        long h1 = mix(h);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1L;
+        return new long[] { h1, h2 };
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Partition {
+        private final long epoch;
+        private final AtomicLongArray words;
+
+        private Partition(long epoch, int numBits) {
+            this.epoch = epoch;
+            this.words = new AtomicLongArray((numBits + 63) / 64);
+        }
+
+        private void set(int bit) {
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    return;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+
+        private boolean get(int bit) {
+            return (words.get(bit >>> 6) & (1L << (bit & 63))) != 0;
+        }
+    }
+}